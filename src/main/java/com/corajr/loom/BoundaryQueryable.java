@@ -0,0 +1,24 @@
+package com.corajr.loom;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * An {@link EventQueryable} that can report when its events next start or
+ * end, so that a scheduler can skip ahead over stretches where nothing
+ * changes.
+ * 
+ * @author corajr
+ */
+public interface BoundaryQueryable extends EventQueryable {
+	/**
+	 * Finds the earliest start or end of any event strictly after the given
+	 * time. Implementations may return an earlier time (including
+	 * <code>time</code> itself) if they cannot tell exactly, but must never
+	 * return a later one.
+	 * 
+	 * @param time
+	 *            the time after which to look
+	 * @return the next boundary, or null if there are none after this time
+	 */
+	public BigFraction getNextBoundary(BigFraction time);
+}
@@ -0,0 +1,160 @@
+package com.corajr.loom;
+
+import java.util.*;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Ticks;
+
+/**
+ * A read-only store of non-overlapping events, kept in primitive arrays
+ * (start and end in {@link Ticks}, value, and the index of the parent event)
+ * sorted by start. Queries use binary search, and {@link LEvent}s are only
+ * created for the events returned.
+ *
+ * This takes a small fraction of the memory of an {@link EventCollection}, so
+ * it is suited to large scores that will not be changed after loading. Create
+ * one with {@link EventCollection#freeze()}.
+ *
+ * @author corajr
+ */
+public class CompactEventCollection extends TickSortedEvents {
+	private final long[] starts;
+	private final long[] ends;
+	private final double[] values;
+
+	/**
+	 * The index of each event's parent in <code>parentEvents</code>, or -1.
+	 */
+	private final int[] parents;
+	private final LEvent[] parentEvents;
+
+	private final long maxDuration;
+
+	/**
+	 * Copies the events of a collection into arrays.
+	 *
+	 * @param events
+	 *            the events, which must be sorted by start and not overlap
+	 * @throws IllegalArgumentException
+	 *             if an event's interval cannot be represented in ticks
+	 */
+	CompactEventCollection(Collection<LEvent> events)
+			throws IllegalArgumentException {
+		int n = events.size();
+		starts = new long[n];
+		ends = new long[n];
+		values = new double[n];
+		parents = new int[n];
+
+		Map<LEvent, Integer> parentIndex = new IdentityHashMap<LEvent, Integer>();
+		List<LEvent> parentList = new ArrayList<LEvent>();
+		long longest = 0;
+
+		int i = 0;
+		for (LEvent e : events) {
+			Interval interval = e.getInterval();
+			if (!interval.isTickExact())
+				throw new IllegalArgumentException("Event " + e
+						+ " cannot be represented in ticks.");
+
+			starts[i] = interval.getStartTicks();
+			ends[i] = interval.getEndTicks();
+			values[i] = e.getValue();
+			longest = Math.max(longest, ends[i] - starts[i]);
+
+			LEvent parent = e.getParentEvent();
+			if (parent == null) {
+				parents[i] = -1;
+			} else {
+				Integer index = parentIndex.get(parent);
+				if (index == null) {
+					index = parentList.size();
+					parentIndex.put(parent, index);
+					parentList.add(parent);
+				}
+				parents[i] = index;
+			}
+			i++;
+		}
+
+		parentEvents = parentList.toArray(new LEvent[parentList.size()]);
+		maxDuration = longest;
+	}
+
+	public int size() {
+		return starts.length;
+	}
+
+	public boolean isEmpty() {
+		return starts.length == 0;
+	}
+
+	/**
+	 * @param i
+	 *            the index of the event, in order of start
+	 * @return the event
+	 */
+	public LEvent get(int i) {
+		LEvent parent = parents[i] >= 0 ? parentEvents[parents[i]] : null;
+		return new LEvent(Interval.fromTicks(starts[i], ends[i]), values[i],
+				parent);
+	}
+
+	/**
+	 * @return all events, ordered by start
+	 */
+	public List<LEvent> values() {
+		List<LEvent> result = new ArrayList<LEvent>(size());
+		for (int i = 0; i < starts.length; i++) {
+			result.add(get(i));
+		}
+		return result;
+	}
+
+	@Override
+	public Interval getTotalInterval() {
+		if (isEmpty())
+			return null;
+		return Interval.fromTicks(starts[0], ends[ends.length - 1]);
+	}
+
+	@Override
+	long eventCount() {
+		return starts.length;
+	}
+
+	@Override
+	long startAt(long i) {
+		return starts[(int) i];
+	}
+
+	@Override
+	long endAt(long i) {
+		return ends[(int) i];
+	}
+
+	@Override
+	LEvent eventAt(long i) {
+		return get((int) i);
+	}
+
+	@Override
+	long getMaxDuration() {
+		return maxDuration;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("CompactEventCollection(\n\t");
+
+		for (int i = 0; i < starts.length; i++) {
+			if (i > 0)
+				sb.append(",\n\t");
+			sb.append(get(i).toString());
+		}
+		sb.append("\n)");
+
+		return sb.toString();
+	}
+}
@@ -3,15 +3,19 @@ package com.corajr.loom;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import org.apache.commons.math3.fraction.BigFraction;
+
 import com.corajr.loom.continuous.ConstantFunction;
 import com.corajr.loom.continuous.ContinuousFunction;
 import com.corajr.loom.mappings.*;
 import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.IntervalMath;
+import com.corajr.loom.transforms.RewriteCache;
 
 /**
  * The implementation of a Pattern, which stores its output mappings and
@@ -26,6 +30,37 @@ public class ConcretePattern extends Pattern {
 	protected EventQueryable events = null;
 	protected ContinuousFunction function = null;
 
+	/**
+	 * Where the events came from, if they were last set by a cached rewrite.
+	 */
+	RewriteCache.Lineage rewriteLineage = null;
+
+	/**
+	 * The last value computed by {@link #getValueFor(Interval, LEvent)},
+	 * before value transformations, with what it was computed from.
+	 */
+	private static final class Memo {
+		final long tick;
+		final Interval interval;
+		final LEvent lineage;
+		final Object source;
+		final long version;
+		final double value;
+
+		Memo(long tick, Interval interval, LEvent lineage, Object source,
+				long version, double value) {
+			this.tick = tick;
+			this.interval = interval;
+			this.lineage = lineage;
+			this.source = source;
+			this.version = version;
+			this.value = value;
+		}
+	}
+
+	private volatile Memo memo = null;
+	private volatile boolean memoized = true;
+
 	public ConcretePattern(Loom loom) {
 		super(loom, null, null, true);
 	}
@@ -46,8 +81,8 @@ public class ConcretePattern extends Pattern {
 	}
 
 	@Override
-	public ConcurrentMap<MappingType, Mapping<?>> getOutputMappings() {
-		return outputMappings;
+	public Map<MappingType, Mapping<?>> getOutputMappings() {
+		return Collections.unmodifiableMap(outputMappings);
 	}
 
 	@Override
@@ -115,6 +150,46 @@ public class ConcretePattern extends Pattern {
 		return result;
 	}
 
+	/**
+	 * Discrete patterns whose mappings only react to events (i.e. have no
+	 * plain {@link MappingType#CALLABLE}) can report their next boundary;
+	 * everything else must be evaluated on every update.
+	 */
+	@Override
+	public BigFraction getTimeUntilNextBoundary(Interval interval,
+			boolean skipContinuous) {
+		if (!hasActiveMappings())
+			return null;
+
+		if (isContinuous())
+			return skipContinuous ? null : BigFraction.ZERO;
+
+		BoundaryQueryable boundaries = (BoundaryQueryable) events;
+		BigFraction start = interval.getStart();
+		BigFraction end = interval.getEnd();
+
+		BigFraction afterStart = boundaries.getNextBoundary(start);
+		BigFraction afterEnd = boundaries.getNextBoundary(end);
+
+		BigFraction result = earliest(
+				afterStart != null ? afterStart.subtract(start) : null,
+				afterEnd != null ? afterEnd.subtract(end) : null);
+
+		if (result != null && result.getNumerator().signum() < 0)
+			result = BigFraction.ZERO;
+		return result;
+	}
+
+	@Override
+	public boolean hasContinuousActiveMappings() {
+		return hasActiveMappings() && isContinuous();
+	}
+
+	private boolean isContinuous() {
+		return !(events instanceof BoundaryQueryable)
+				|| outputMappings.containsKey(MappingType.CALLABLE);
+	}
+
 	@Override
 	public boolean hasMapping(MappingType mapping) {
 		return outputMappings.containsKey(mapping);
@@ -122,6 +197,75 @@ public class ConcretePattern extends Pattern {
 
 	@Override
 	public double getValueFor(Interval now) {
+		return getValueFor(now, null);
+	}
+
+	/**
+	 * If several events are active, the value is taken from the one that is
+	 * an ancestor of (or equal to) <code>lineage</code>, if there is one, and
+	 * otherwise from the last.
+	 */
+	@Override
+	public double getValueFor(Interval now, LEvent lineage) {
+		long version = getMemoVersion();
+		if (version < 0)
+			return transformValue(computeValueFor(now, lineage));
+
+		long tick = loom != null ? loom.getUpdateCount() : -1;
+		Object source = function != null ? function : events;
+
+		Memo last = memo;
+		if (last != null && last.tick == tick && last.source == source
+				&& last.version == version && last.lineage == lineage
+				&& last.interval.equals(now))
+			return transformValue(last.value);
+
+		double value = computeValueFor(now, lineage);
+		memo = new Memo(tick, now, lineage, source, version, value);
+		return transformValue(value);
+	}
+
+	/**
+	 * Sets whether values are remembered between queries. When several
+	 * patterns follow this one (or a MIDI mapping reads it for several fields
+	 * of a message), it is usually queried more than once with the same
+	 * interval in each update; by default, the value is only computed once.
+	 * Values are never remembered for functions that are not deterministic
+	 * (see {@link ContinuousFunction#isDeterministic()}).
+	 * 
+	 * @param memoized
+	 *            whether to remember the last value
+	 * @return the current pattern
+	 */
+	@Override
+	public ConcretePattern setMemoized(boolean memoized) {
+		this.memoized = memoized;
+		this.memo = null;
+		return this;
+	}
+
+	public boolean isMemoized() {
+		return memoized;
+	}
+
+	/**
+	 * @return a number that changes whenever the value for a given interval
+	 *         could change (within one update of the scheduler), or -1 if
+	 *         values cannot be remembered
+	 */
+	private long getMemoVersion() {
+		if (!memoized)
+			return -1;
+		if (function != null)
+			return function.isDeterministic() ? 0 : -1;
+		if (events == null)
+			return 0;
+		if (events instanceof VersionedQueryable)
+			return ((VersionedQueryable) events).getVersion();
+		return -1;
+	}
+
+	private double computeValueFor(Interval now, LEvent lineage) {
 		double value = defaultValue;
 		if (this.function != null) {
 			try {
@@ -132,15 +276,34 @@ public class ConcretePattern extends Pattern {
 			}
 		} else if (this.events != null) {
 			Collection<LEvent> activeEvents = this.events.getForInterval(now);
+			LEvent chosen = null;
 			for (LEvent e : activeEvents) {
-				value = e.getValue();
+				chosen = e;
+			}
+			if (lineage != null && activeEvents.size() > 1) {
+				LEvent ancestor = findAncestor(activeEvents, lineage);
+				if (ancestor != null)
+					chosen = ancestor;
 			}
+			if (chosen != null)
+				value = chosen.getValue();
 		}
-		value = transformValue(value);
 
 		return value;
 	}
 
+	private static LEvent findAncestor(Collection<LEvent> candidates,
+			LEvent lineage) {
+		for (LEvent ancestor = lineage; ancestor != null; ancestor = ancestor
+				.getParentEvent()) {
+			for (LEvent e : candidates) {
+				if (e.equals(ancestor))
+					return e;
+			}
+		}
+		return null;
+	}
+
 	private double transformValue(double value) {
 		// apply transformations
 		value *= valueScale;
@@ -195,8 +358,7 @@ public class ConcretePattern extends Pattern {
 		ConcretePattern copy = new ConcretePattern(loom);
 		if (events != null) {
 			EventCollection collection = getEvents();
-			copy.events = (EventQueryable) (collection != null ? collection
-					.clone() : events);
+			copy.events = collection != null ? collection.clone() : events;
 		} else if (function != null) {
 			copy.function = function;
 		}
@@ -15,7 +15,8 @@ import com.corajr.loom.time.Scheduler;
  * @author corajr
  * 
  */
-public class EventBoundaryProxy extends EventTransformer {
+public class EventBoundaryProxy extends EventTransformer implements
+		BoundaryQueryable {
 	final private Pattern timeScaler;
 
 	public static final double ONSET = 1.0;
@@ -33,6 +34,24 @@ public class EventBoundaryProxy extends EventTransformer {
 			return Scheduler.DEFAULT_RESOLUTION;
 	}
 
+	/**
+	 * Every onset or release lies within one minimum resolution of a boundary
+	 * of the parent event, so the next parent boundary after
+	 * <code>time - resolution</code>, less the resolution, is a safe lower
+	 * bound.
+	 */
+	@Override
+	public BigFraction getNextBoundary(BigFraction time) {
+		EventQueryable parent = getParentEvents();
+		if (!(parent instanceof BoundaryQueryable))
+			return time;
+
+		BigFraction resolution = getMinimumResolution();
+		BigFraction next = ((BoundaryQueryable) parent).getNextBoundary(time
+				.subtract(resolution));
+		return next != null ? next.subtract(resolution) : null;
+	}
+
 	@Override
 	public Collection<LEvent> apply(Interval interval, LEvent e) {
 		Collection<LEvent> newEvents = new ArrayList<LEvent>();
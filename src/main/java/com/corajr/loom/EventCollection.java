@@ -2,10 +2,12 @@ package com.corajr.loom;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.math3.fraction.BigFraction;
 
 import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Ticks;
 
 /**
  * Stores events as a sorted map indexed by start position.
@@ -18,9 +20,29 @@ import com.corajr.loom.time.Interval;
  */
 
 public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
-		implements EventQueryable {
+		implements BoundaryQueryable, EventStore, VersionedQueryable {
 	private static final long serialVersionUID = -4270420021705392093L;
 
+	/**
+	 * The longest duration of any event ever put into this collection. Used to
+	 * bound how far back from a query's start an overlapping event could begin.
+	 */
+	private volatile BigFraction maxDuration = BigFraction.ZERO;
+
+	/**
+	 * Counts the changes made to this collection, so that results computed
+	 * from it can tell whether they are stale.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Creates an empty collection, ordered by {@link Ticks#COMPARATOR} so that
+	 * lookups avoid BigInteger arithmetic where possible.
+	 */
+	public EventCollection() {
+		super(Ticks.COMPARATOR);
+	}
+
 	/**
 	 * Creates a series of events from a string.
 	 * 
@@ -153,9 +175,73 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 	 * @return a new EventCollection
 	 */
 	public static EventCollection fromEvents(Collection<LEvent> collection) {
-		EventCollection events = new EventCollection();
-		events.addAll(collection);
-		return events;
+		return new EventCollection(sortAndCheck(collection));
+	}
+
+	/**
+	 * Builds a collection from events already sorted and checked for
+	 * overlaps, in a single pass.
+	 */
+	private EventCollection(SortedMap<BigFraction, LEvent> sorted) {
+		super(sorted);
+		for (LEvent e : sorted.values()) {
+			BigFraction duration = e.getInterval().getSize();
+			if (duration.compareTo(maxDuration) > 0)
+				maxDuration = duration;
+		}
+	}
+
+	/**
+	 * Sorts events by start and checks that none of them overlap, comparing
+	 * each event only with the one before it.
+	 * 
+	 * @param events
+	 *            the events to sort
+	 * @return the events, indexed by start
+	 * @throws IllegalStateException
+	 *             if any events overlap
+	 */
+	private static SortedMap<BigFraction, LEvent> sortAndCheck(
+			Collection<LEvent> events) throws IllegalStateException {
+		SortedMap<BigFraction, LEvent> sorted = new TreeMap<BigFraction, LEvent>(
+				Ticks.COMPARATOR);
+		for (LEvent e : events) {
+			if (sorted.put(e.getInterval().getStart(), e) != null)
+				throw overlapping();
+		}
+
+		LEvent previous = null;
+		for (LEvent e : sorted.values()) {
+			if (previous != null
+					&& Ticks.compare(previous.getInterval().getEnd(), e
+							.getInterval().getStart()) > 0)
+				throw overlapping();
+			previous = e;
+		}
+		return sorted;
+	}
+
+	private static IllegalStateException overlapping() {
+		return new IllegalStateException(
+				"Cannot add overlapping events! Create a new pattern instead.");
+	}
+
+	/**
+	 * Checks an event against its neighbours in this collection, which is
+	 * enough since the existing events do not overlap each other.
+	 */
+	private boolean overlapsExisting(LEvent e) {
+		Interval interval = e.getInterval();
+		Map.Entry<BigFraction, LEvent> before = floorEntry(interval.getStart());
+		if (before != null
+				&& (Ticks.compare(before.getKey(), interval.getStart()) == 0 || Ticks
+						.compare(before.getValue().getInterval().getEnd(),
+								interval.getStart()) > 0))
+			return true;
+
+		Map.Entry<BigFraction, LEvent> after = higherEntry(interval.getStart());
+		return after != null
+				&& Ticks.compare(after.getKey(), interval.getEnd()) < 0;
 	}
 
 	/**
@@ -167,16 +253,28 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 	 * @throws IllegalStateException
 	 */
 	public void add(LEvent e) throws IllegalStateException {
-		Collection<LEvent> existingEvents = getForInterval(e.getInterval());
-		if (!existingEvents.isEmpty())
-			throw new IllegalStateException(
-					"Cannot add overlapping events! Create a new pattern instead.");
+		if (overlapsExisting(e))
+			throw overlapping();
 		put(e.getInterval().getStart(), e);
 	}
 
+	/**
+	 * Add several events. The events are sorted once and each is checked only
+	 * against its neighbours, so this takes O(n log n) time. If any of the
+	 * events overlap, none of them are added.
+	 * 
+	 * @param events
+	 *            the events to add
+	 * @throws IllegalStateException
+	 */
 	public void addAll(Collection<LEvent> events) throws IllegalStateException {
-		for (LEvent e : events) {
-			add(e);
+		SortedMap<BigFraction, LEvent> sorted = sortAndCheck(events);
+		for (LEvent e : sorted.values()) {
+			if (overlapsExisting(e))
+				throw overlapping();
+		}
+		for (Map.Entry<BigFraction, LEvent> entry : sorted.entrySet()) {
+			put(entry.getKey(), entry.getValue());
 		}
 	}
 
@@ -202,10 +300,37 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 	 *            the events to add
 	 */
 	public void addWithOffset(BigFraction offset, Collection<LEvent> events) {
+		List<LEvent> shifted = new ArrayList<LEvent>(events.size());
 		for (LEvent e : events) {
 			Interval newInterval = e.getInterval().add(offset);
-			add(new LEvent(newInterval, e.getValue()));
+			shifted.add(new LEvent(newInterval, e.getValue()));
 		}
+		addAll(shifted);
+	}
+
+	/**
+	 * Copies the events into a new collection with its own version, so that
+	 * changes to either are not counted by the other.
+	 * 
+	 * @return a copy of this collection
+	 */
+	@Override
+	public EventCollection clone() {
+		return new EventCollection(this);
+	}
+
+	/**
+	 * Copies the events into a read-only {@link CompactEventCollection}, which
+	 * uses much less memory. Later changes to this collection do not affect
+	 * the copy.
+	 * 
+	 * @return a compact copy of this collection
+	 * @throws IllegalArgumentException
+	 *             if an event's interval cannot be represented in
+	 *             {@link Ticks}
+	 */
+	public CompactEventCollection freeze() throws IllegalArgumentException {
+		return new CompactEventCollection(new ArrayList<LEvent>(values()));
 	}
 
 	/**
@@ -227,6 +352,7 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 	 * 
 	 * @return the total duration of this collection (null if it has no events)
 	 */
+	@Override
 	public Interval getTotalInterval() {
 		if (this.size() > 0) {
 			BigFraction start = this.firstKey();
@@ -237,16 +363,121 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 		}
 	}
 
+	/**
+	 * Returns a number that changes whenever an event is added, replaced, or
+	 * removed through this collection's methods (changes made through its
+	 * views or iterators are not counted).
+	 * 
+	 * @return the current version
+	 */
+	@Override
+	public long getVersion() {
+		return version.get();
+	}
+
+	@Override
+	public LEvent put(BigFraction start, LEvent e) {
+		BigFraction duration = e.getInterval().getSize();
+		synchronized (this) {
+			if (duration.compareTo(maxDuration) > 0)
+				maxDuration = duration;
+		}
+		LEvent result = super.put(start, e);
+		version.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	public LEvent putIfAbsent(BigFraction start, LEvent e) {
+		BigFraction duration = e.getInterval().getSize();
+		synchronized (this) {
+			if (duration.compareTo(maxDuration) > 0)
+				maxDuration = duration;
+		}
+		LEvent result = super.putIfAbsent(start, e);
+		version.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	public LEvent replace(BigFraction start, LEvent e) {
+		LEvent result = super.replace(start, e);
+		version.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	public boolean replace(BigFraction start, LEvent oldEvent, LEvent newEvent) {
+		boolean result = super.replace(start, oldEvent, newEvent);
+		version.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	public LEvent remove(Object start) {
+		LEvent result = super.remove(start);
+		version.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	public boolean remove(Object start, Object e) {
+		boolean result = super.remove(start, e);
+		version.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	public Map.Entry<BigFraction, LEvent> pollFirstEntry() {
+		Map.Entry<BigFraction, LEvent> result = super.pollFirstEntry();
+		version.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	public Map.Entry<BigFraction, LEvent> pollLastEntry() {
+		Map.Entry<BigFraction, LEvent> result = super.pollLastEntry();
+		version.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Returns the events overlapping the interval. Only the events starting
+	 * between <code>queryStart - maxDuration</code> and <code>queryEnd</code>
+	 * are examined, so the cost is proportional to the number of candidates
+	 * rather than to the size of the collection.
+	 */
 	@Override
 	public Collection<LEvent> getForInterval(Interval interval) {
 		List<LEvent> events = new ArrayList<LEvent>();
-		for (LEvent e : this.values()) {
+		BigFraction from = interval.getStart().subtract(maxDuration);
+		for (LEvent e : this.subMap(from, false, interval.getEnd(), true)
+				.values()) {
 			if (e.containedBy(interval))
 				events.add(e);
 		}
 		return events;
 	}
 
+	@Override
+	public BigFraction getNextBoundary(BigFraction time) {
+		BigFraction next = higherKey(time);
+		for (LEvent e : this.subMap(time.subtract(maxDuration), false, time,
+				true).values()) {
+			BigFraction end = e.getInterval().getEnd();
+			if (Ticks.compare(end, time) > 0
+					&& (next == null || Ticks.compare(end, next) < 0))
+				next = end;
+		}
+		return next;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
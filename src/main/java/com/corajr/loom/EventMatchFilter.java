@@ -3,6 +3,8 @@ package com.corajr.loom;
 import java.util.Collection;
 import java.util.Collections;
 
+import org.apache.commons.math3.fraction.BigFraction;
+
 import com.corajr.loom.time.Interval;
 
 /**
@@ -10,7 +12,8 @@ import com.corajr.loom.time.Interval;
  * 
  * @author corajr
  */
-public class EventMatchFilter extends EventTransformer {
+public class EventMatchFilter extends EventTransformer implements
+		BoundaryQueryable {
 	double matchValue;
 	static final double EPSILON = 1e-4;
 
@@ -19,6 +22,18 @@ public class EventMatchFilter extends EventTransformer {
 		this.matchValue = matchValue;
 	}
 
+	/**
+	 * Matching changes only the values of events, so the boundaries are those
+	 * of the parent.
+	 */
+	@Override
+	public BigFraction getNextBoundary(BigFraction time) {
+		EventQueryable parent = getParentEvents();
+		if (parent instanceof BoundaryQueryable)
+			return ((BoundaryQueryable) parent).getNextBoundary(time);
+		return time;
+	}
+
 	@Override
 	public Collection<LEvent> apply(Interval interval, LEvent e) {
 		if (Math.abs(e.getValue() - matchValue) < EPSILON)
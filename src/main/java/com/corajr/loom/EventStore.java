@@ -0,0 +1,19 @@
+package com.corajr.loom;
+
+import com.corajr.loom.time.Interval;
+
+/**
+ * An {@link EventQueryable} holding a finite set of events, which can report
+ * the span of time they take up (used, for example, to loop a pattern over
+ * its events).
+ * 
+ * @author corajr
+ */
+public interface EventStore extends EventQueryable {
+	/**
+	 * Find the span of time taken up by all of the events in this store.
+	 * 
+	 * @return the total duration of the events (null if there are none)
+	 */
+	public Interval getTotalInterval();
+}
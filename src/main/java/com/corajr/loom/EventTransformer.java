@@ -20,6 +20,10 @@ public abstract class EventTransformer implements EventQueryable {
 		this.parentEvents = parentEvents;
 	}
 
+	protected EventQueryable getParentEvents() {
+		return parentEvents;
+	}
+
 	public abstract Collection<LEvent> apply(Interval interval, LEvent e);
 
 	@Override
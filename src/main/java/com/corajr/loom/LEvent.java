@@ -71,6 +71,11 @@ public class LEvent {
 	 * @return whether the event falls within the interval
 	 */
 	public boolean containedBy(Interval queryInterval) {
+		if (interval.isTickExact() && queryInterval.isTickExact()) {
+			return interval.getStartTicks() <= queryInterval.getEndTicks()
+					&& interval.getEndTicks() > queryInterval.getStartTicks();
+		}
+
 		BigFraction queryStart = queryInterval.getStart();
 		BigFraction queryEnd = queryInterval.getEnd();
 
@@ -122,6 +122,22 @@ public class Loom {
 		return scheduler.getCurrentInterval();
 	}
 
+	/**
+	 * @return the wall-clock time at which the events being evaluated are due,
+	 *         or -1 if they should be sent immediately
+	 * @see Scheduler#getTargetMillis()
+	 */
+	public long getTargetMillis() {
+		return scheduler.getTargetMillis();
+	}
+
+	/**
+	 * @see Scheduler#getUpdateCount()
+	 */
+	public long getUpdateCount() {
+		return scheduler.getUpdateCount();
+	}
+
 	public void play() {
 		scheduler.play();
 	}
@@ -226,6 +242,15 @@ public class Loom {
 		return periodToBpm(getPeriod());
 	}
 
+	/**
+	 * Sets the tempo from the current position onward, or from the start if
+	 * playback has not begun. Tempo changes scheduled later in the tempo map
+	 * (see {@link #getTempoMap()}) are kept.
+	 * 
+	 * @param bpm
+	 *            the tempo in beats per minute, with four beats to a cycle
+	 * @see Scheduler#setPeriod(long)
+	 */
 	public void setBPM(double bpm) {
 		setPeriod(bpmToPeriod(bpm));
 	}
@@ -242,6 +267,36 @@ public class Loom {
 		return scheduler.getMinimumResolution();
 	}
 
+	/**
+	 * @return the tempo map, for scheduling changes of tempo
+	 * @see Scheduler#getTempoMap()
+	 */
+	public TempoMap getTempoMap() {
+		return scheduler.getTempoMap();
+	}
+
+	/**
+	 * @param cycles
+	 *            a position in cycles
+	 * @return the milliseconds after playback began at which it is reached
+	 * @see Scheduler#toMillis(BigFraction)
+	 */
+	public double toMillis(BigFraction cycles) {
+		return scheduler.toMillis(cycles);
+	}
+
+	/**
+	 * Runs callbacks on the dispatcher's threads rather than on the timing
+	 * thread.
+	 * 
+	 * @param dispatcher
+	 *            the dispatcher, or null to run callbacks inline
+	 * @see Scheduler#setDispatcher(CallbackDispatcher)
+	 */
+	public void setDispatcher(CallbackDispatcher dispatcher) {
+		scheduler.setDispatcher(dispatcher);
+	}
+
 	public void midiMessage(MidiMessage theMidiMessage) {
 		// MidiTools.printMidi(theMidiMessage);
 	}
@@ -255,6 +310,7 @@ public class Loom {
 	}
 
 	public void dispose() {
+		scheduler.dispose();
 		oscP5Wrapper.dispose();
 		midiBusWrapper.dispose();
 	}
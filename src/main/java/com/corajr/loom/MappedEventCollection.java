@@ -0,0 +1,313 @@
+package com.corajr.loom;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import com.corajr.loom.recording.OscScore;
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Ticks;
+import com.corajr.loom.util.MidiTools;
+
+/**
+ * A read-only store of events kept in a memory-mapped file, for scores that
+ * are too large to hold on the heap. Opening a score maps the file without
+ * parsing it; queries read only the pages holding the events they need.
+ *
+ * The file has a fixed layout (all numbers big-endian):
+ * <ul>
+ * <li>a header: the magic number "LOOMEVT1", the number of events (long), the
+ * index stride (int), and the longest duration in {@link Ticks} (long);</li>
+ * <li>the events, sorted by start, each a 24-byte record of start and end in
+ * ticks (long) and value (double);</li>
+ * <li>a sparse index: the start of every <i>stride</i>-th event (long).</li>
+ * </ul>
+ * The sparse index is read into memory when the file is opened. A query
+ * binary-searches the index and then the block of records it points to.
+ *
+ * Events may overlap. Their intervals must be representable in ticks.
+ *
+ * @author corajr
+ */
+public class MappedEventCollection extends TickSortedEvents implements
+		Closeable {
+	public static final long MAGIC = 0x4c4f4f4d45565431L; // "LOOMEVT1"
+	public static final int HEADER_SIZE = 8 + 8 + 4 + 8;
+	public static final int RECORD_SIZE = 8 + 8 + 8;
+	public static final int DEFAULT_STRIDE = 256;
+
+	/**
+	 * Records per mapped region, since a single mapping is limited to 2 GB.
+	 */
+	private static final int CHUNK_BITS = 26;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer[] chunks;
+	private final long size;
+	private final int stride;
+	private final long maxDuration;
+	private final long[] index;
+
+	private MappedEventCollection(File path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		try {
+			if (file.length() < HEADER_SIZE || file.readLong() != MAGIC)
+				throw new IOException(path.getPath()
+						+ " is not an event file.");
+
+			size = file.readLong();
+			stride = file.readInt();
+			maxDuration = file.readLong();
+
+			if (size < 0 || stride <= 0
+					|| file.length() < HEADER_SIZE + size * RECORD_SIZE)
+				throw new IOException(path.getPath() + " is truncated.");
+
+			FileChannel channel = file.getChannel();
+			int chunkCount = (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+			chunks = new MappedByteBuffer[chunkCount];
+			for (int c = 0; c < chunkCount; c++) {
+				long first = (long) c << CHUNK_BITS;
+				long records = Math.min(size - first, 1L << CHUNK_BITS);
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+						HEADER_SIZE + first * RECORD_SIZE, records
+								* RECORD_SIZE);
+			}
+
+			int entries = (int) ((size + stride - 1) / stride);
+			index = new long[entries];
+			file.seek(HEADER_SIZE + size * RECORD_SIZE);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file.getFD())));
+			for (int i = 0; i < entries; i++) {
+				index[i] = in.readLong();
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Maps an event file written by one of the <code>write</code> methods.
+	 *
+	 * @param path
+	 *            the file to open
+	 * @return the events in the file
+	 * @throws IOException
+	 *             if the file cannot be read or is not an event file
+	 */
+	public static MappedEventCollection open(File path) throws IOException {
+		return new MappedEventCollection(path);
+	}
+
+	/**
+	 * Writes events to a file in the format read by {@link #open(File)}.
+	 *
+	 * @param path
+	 *            the file to write
+	 * @param events
+	 *            the events, in any order
+	 * @throws IOException
+	 *             if the file cannot be written
+	 * @throws IllegalArgumentException
+	 *             if an event's interval cannot be represented in ticks
+	 */
+	public static void write(File path, Collection<LEvent> events)
+			throws IOException {
+		List<LEvent> sorted = new ArrayList<LEvent>(events);
+		Collections.sort(sorted, new Comparator<LEvent>() {
+			@Override
+			public int compare(LEvent a, LEvent b) {
+				return Long.compare(a.getInterval().getStartTicks(), b
+						.getInterval().getStartTicks());
+			}
+		});
+
+		long longest = 0;
+		for (LEvent e : sorted) {
+			Interval interval = e.getInterval();
+			if (!interval.isTickExact())
+				throw new IllegalArgumentException("Event " + e
+						+ " cannot be represented in ticks.");
+			longest = Math.max(longest,
+					interval.getEndTicks() - interval.getStartTicks());
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(path)));
+		try {
+			out.writeLong(MAGIC);
+			out.writeLong(sorted.size());
+			out.writeInt(DEFAULT_STRIDE);
+			out.writeLong(longest);
+
+			for (LEvent e : sorted) {
+				out.writeLong(e.getInterval().getStartTicks());
+				out.writeLong(e.getInterval().getEndTicks());
+				out.writeDouble(e.getValue());
+			}
+
+			for (int i = 0; i < sorted.size(); i += DEFAULT_STRIDE) {
+				out.writeLong(sorted.get(i).getInterval().getStartTicks());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void write(File path, EventCollection events)
+			throws IOException {
+		write(path, events.values());
+	}
+
+	/**
+	 * Writes the notes of a MIDI file as events.
+	 *
+	 * @see MidiTools#eventsFromFile(File)
+	 */
+	public static void writeMidi(File path, File midiFile) throws IOException {
+		write(path, MidiTools.eventsFromFile(midiFile).values());
+	}
+
+	/**
+	 * Writes the timing of an {@link OscScore} as events: each bundle becomes
+	 * an event with value 1.0, lasting until the next bundle (the last one
+	 * lasts for the shortest gap in the score, or one cycle). The contents of
+	 * the bundles are not stored. Timestamps are rounded to the nearest tick.
+	 */
+	public static void writeOscScore(File path, OscScore score)
+			throws IOException {
+		List<Long> times = new ArrayList<Long>(score.size());
+		for (Double timestamp : score.keySet()) {
+			long ticks = Math.round(timestamp * Ticks.PER_CYCLE);
+			if (times.isEmpty() || ticks > times.get(times.size() - 1))
+				times.add(ticks);
+		}
+
+		long shortest = Ticks.PER_CYCLE;
+		for (int i = 1; i < times.size(); i++) {
+			shortest = Math.min(shortest, times.get(i) - times.get(i - 1));
+		}
+
+		List<LEvent> events = new ArrayList<LEvent>(times.size());
+		for (int i = 0; i < times.size(); i++) {
+			long start = times.get(i);
+			long end = i + 1 < times.size() ? times.get(i + 1) : start
+					+ shortest;
+			events.add(new LEvent(Interval.fromTicks(start, end), 1.0));
+		}
+		write(path, events);
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	long eventCount() {
+		return size;
+	}
+
+	@Override
+	long startAt(long i) {
+		return chunks[(int) (i >>> CHUNK_BITS)]
+				.getLong((int) (i & CHUNK_MASK) * RECORD_SIZE);
+	}
+
+	@Override
+	long endAt(long i) {
+		return chunks[(int) (i >>> CHUNK_BITS)]
+				.getLong((int) (i & CHUNK_MASK) * RECORD_SIZE + 8);
+	}
+
+	private double valueAt(long i) {
+		return chunks[(int) (i >>> CHUNK_BITS)]
+				.getDouble((int) (i & CHUNK_MASK) * RECORD_SIZE + 16);
+	}
+
+	/**
+	 * @param i
+	 *            the index of the event, in order of start
+	 * @return the event
+	 */
+	public LEvent get(long i) {
+		return new LEvent(Interval.fromTicks(startAt(i), endAt(i)), valueAt(i));
+	}
+
+	@Override
+	LEvent eventAt(long i) {
+		return get(i);
+	}
+
+	@Override
+	long getMaxDuration() {
+		return maxDuration;
+	}
+
+	@Override
+	public Interval getTotalInterval() {
+		if (isEmpty())
+			return null;
+
+		long end = Long.MIN_VALUE;
+		long last = startAt(size - 1);
+		for (long i = firstStartAfter(last - maxDuration); i < size; i++) {
+			end = Math.max(end, endAt(i));
+		}
+		return Interval.fromTicks(startAt(0), end);
+	}
+
+	/**
+	 * Finds the block of records in the sparse index, then searches within
+	 * it.
+	 *
+	 * @return the index of the first event starting after the given tick
+	 */
+	@Override
+	long firstStartAfter(long ticks) {
+		int lo = 0;
+		int hi = index.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (index[mid] <= ticks)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		if (lo == 0)
+			return 0;
+
+		long from = (long) (lo - 1) * stride;
+		long to = Math.min((long) lo * stride, size);
+		while (from < to) {
+			long mid = (from + to) >>> 1;
+			if (startAt(mid) <= ticks)
+				from = mid + 1;
+			else
+				to = mid;
+		}
+		return from;
+	}
+
+	/**
+	 * Closes the file. The mapping remains valid until it is garbage
+	 * collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	@Override
+	public String toString() {
+		return "MappedEventCollection(" + size + " events)";
+	}
+}
@@ -3,9 +3,11 @@ package com.corajr.loom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sound.midi.*;
 
@@ -69,6 +71,42 @@ public class Pattern implements Cloneable {
 
 	protected boolean isConcrete;
 
+	/**
+	 * Counts the changes within this pattern's subtree (children added or
+	 * removed, mappings put) that may affect {@link #hasActiveMappings()}.
+	 */
+	private final AtomicLong structureVersion = new AtomicLong();
+
+	/**
+	 * Counts changes to this pattern's own time parameters (scale, offset,
+	 * looping, repeats, and time matching).
+	 */
+	private final AtomicLong timeVersion = new AtomicLong();
+
+	/**
+	 * The chain of time transforms from the root of the pattern tree to this
+	 * pattern, together with what it was compiled from: the parent's compiled
+	 * chain and the version of this pattern's time parameters (see
+	 * {@link #getTimeVersion()}).
+	 */
+	private static final class CompiledTime {
+		final CompiledTime parentTime;
+		final long version;
+		final Pattern root;
+		final TimeTransform transform;
+
+		CompiledTime(CompiledTime parentTime, long version, Pattern root,
+				TimeTransform transform) {
+			this.parentTime = parentTime;
+			this.version = version;
+			this.root = root;
+			this.transform = transform;
+		}
+	}
+
+	private volatile CompiledTime compiledWithOffset = null;
+	private volatile CompiledTime compiledWithoutOffset = null;
+
 	/**
 	 * Constants for each possible mapping from floating-point values to output.
 	 * Only one mapping of each type is allowed per pattern.
@@ -168,10 +206,12 @@ public class Pattern implements Cloneable {
 	 * @param loom
 	 *            the {@link Loom} that holds this pattern (can be null)
 	 * @param events
-	 *            the {@link EventCollection} to be added
+	 *            the events to be added, such as an {@link EventCollection}
+	 *            or, for overlapping events, a
+	 *            {@link PolyphonicEventCollection}
 	 */
 
-	public Pattern(Loom loom, EventCollection events) {
+	public Pattern(Loom loom, EventQueryable events) {
 		this(loom, events, null, false);
 	}
 
@@ -185,14 +225,14 @@ public class Pattern implements Cloneable {
 	 * @param loom
 	 *            the {@link Loom} that holds this pattern (can be null)
 	 * @param events
-	 *            an {@link EventCollection} for the pattern
+	 *            an {@link EventQueryable} for the pattern
 	 * @param function
 	 *            a {@link ContinuousFunction} for the pattern
 	 * @param isConcrete
 	 *            is the pattern concrete (i.e. does it contain events/a
 	 *            function directly)
 	 */
-	public Pattern(Loom loom, EventCollection events,
+	public Pattern(Loom loom, EventQueryable events,
 			ContinuousFunction function, boolean isConcrete) {
 		this.loom = loom;
 		this.isConcrete = isConcrete;
@@ -318,6 +358,7 @@ public class Pattern implements Cloneable {
 			children = new PatternCollection();
 		child.parent = this;
 		children.add(child);
+		structureChanged();
 		return children.size() - 1;
 	}
 
@@ -329,8 +370,29 @@ public class Pattern implements Cloneable {
 	}
 
 	protected void removeChild(Pattern child) {
-		if (children != null)
+		if (children != null) {
 			children.remove(child);
+			structureChanged();
+		}
+	}
+
+	/**
+	 * @return a number that changes whenever this pattern's subtree changes in
+	 *         a way that may affect {@link #hasActiveMappings()}
+	 */
+	long getStructureVersion() {
+		return structureVersion.get();
+	}
+
+	/**
+	 * Signals that this pattern's subtree has changed (must be called after
+	 * the change is visible), by counting the change on this pattern and each
+	 * of its ancestors.
+	 */
+	void structureChanged() {
+		for (Pattern p = this; p != null; p = p.parent) {
+			p.structureVersion.incrementAndGet();
+		}
 	}
 
 	/**
@@ -384,11 +446,20 @@ public class Pattern implements Cloneable {
 	 * @see MappingType
 	 */
 	public Pattern putMapping(MappingType mappingType, Mapping<?> mapping) {
-		getOutputMappings().put(mappingType, mapping);
+		ConcretePattern concrete = getConcretePattern();
+		if (concrete == null)
+			throw new IllegalStateException(
+					"Mappings cannot be set on an empty Pattern.");
+		concrete.outputMappings.put(mappingType, mapping);
+		concrete.structureChanged();
 		return this;
 	}
 
-	public ConcurrentMap<MappingType, Mapping<?>> getOutputMappings() {
+	/**
+	 * @return a read-only view of this pattern's mappings; use
+	 *         {@link #putMapping(MappingType, Mapping)} to change them
+	 */
+	public Map<MappingType, Mapping<?>> getOutputMappings() {
 		ConcretePattern concrete = getConcretePattern();
 		if (concrete == null)
 			throw new IllegalStateException(
@@ -555,6 +626,47 @@ public class Pattern implements Cloneable {
 		return getConcretePattern().getValueFor(now);
 	}
 
+	/**
+	 * Sets whether this pattern remembers its last value, so that repeated
+	 * queries for the same interval within an update are only computed once.
+	 * 
+	 * @param memoized
+	 *            whether to remember the last value
+	 * @return the current pattern
+	 * @see ConcretePattern#setMemoized(boolean)
+	 */
+	public Pattern setMemoized(boolean memoized) {
+		ConcretePattern pattern = getConcretePattern();
+		if (pattern == null)
+			throw new IllegalStateException(
+					"Cannot set memoization on empty Pattern!");
+
+		pattern.setMemoized(memoized);
+		return this;
+	}
+
+	/**
+	 * Returns the value of the pattern for a specified {@link Interval},
+	 * preferring the event that the given event was derived from. When events
+	 * overlap (as in a {@link PolyphonicEventCollection}), this picks out the
+	 * voice that produced an onset rather than whichever event is last.
+	 * 
+	 * @param now
+	 *            the interval to query
+	 * @param lineage
+	 *            an event whose ancestors may belong to this pattern (can be
+	 *            null)
+	 * @return the value of the Pattern
+	 */
+	public double getValueFor(Interval now, LEvent lineage) {
+		ConcretePattern pattern = getConcretePattern();
+		if (pattern == null)
+			throw new IllegalStateException(
+					"Cannot get value from empty Pattern!");
+
+		return pattern.getValueFor(now, lineage);
+	}
+
 	/**
 	 * Returns the current interval from the perspective of this pattern,
 	 * transformed by its time scale, offset, and loop interval (if applicable).
@@ -584,14 +696,90 @@ public class Pattern implements Cloneable {
 	 * @see #transform(Interval, boolean)
 	 */
 	public Interval getCurrentInterval(boolean useOffset) {
-		Interval interval;
-		if (this.parent != null) {
-			interval = parent.getCurrentInterval(useParentOffset);
-		} else {
-			interval = loom.getCurrentInterval();
+		CompiledTime compiled = getCompiledTime(useOffset);
+		return compiled.transform.apply(compiled.root.loom
+				.getCurrentInterval());
+	}
+
+	/**
+	 * Returns the combined time transform of this pattern and all of its
+	 * ancestors, which maps the Loom's time to this pattern's time in a single
+	 * step. It is compiled on first use and again after the time parameters
+	 * of this pattern, the pattern it matches, or one of its ancestors change.
+	 * 
+	 * @param useOffset
+	 *            whether to use this pattern's time offset
+	 * @return the compiled transform
+	 * @see #getCurrentInterval(boolean)
+	 */
+	public TimeTransform getTimeTransform(boolean useOffset) {
+		return getCompiledTime(useOffset).transform;
+	}
+
+	private CompiledTime getCompiledTime(boolean useOffset) {
+		// a parent's chain is only recompiled when it changes, so the same
+		// instance means the ancestors are unchanged
+		CompiledTime parentTime = parent != null ? parent
+				.getCompiledTime(useParentOffset) : null;
+		long version = getTimeVersion();
+
+		CompiledTime compiled = useOffset ? compiledWithOffset
+				: compiledWithoutOffset;
+		if (compiled != null && compiled.parentTime == parentTime
+				&& compiled.version == version)
+			return compiled;
+
+		Pattern root = this;
+		TimeTransform transform = TimeTransform.IDENTITY;
+		if (parentTime != null) {
+			root = parentTime.root;
+			transform = parentTime.transform;
+		}
+
+		BigFraction scale = getTimeScale();
+		boolean positiveScale = scale.getNumerator().signum() > 0;
+		transform = transform.then(scale, useOffset ? getTimeOffset()
+				: BigFraction.ZERO, loopInterval, getRepeats() > 0
+				|| (isLooping && positiveScale));
+
+		compiled = new CompiledTime(parentTime, version, root, transform);
+		if (useOffset)
+			compiledWithOffset = compiled;
+		else
+			compiledWithoutOffset = compiled;
+		return compiled;
+	}
+
+	/**
+	 * @return a number that increases whenever the time parameters of this
+	 *         pattern, or of the patterns it matches, change
+	 */
+	long getTimeVersion() {
+		long version = timeVersion.get();
+		for (Pattern p = timeMatch; p != null; p = p.timeMatch) {
+			version += p.timeVersion.get();
 		}
+		return version;
+	}
+
+	/**
+	 * Matches the time parameters of <code>pattern</code>. This pattern's own
+	 * count is raised past the total through the previous match, so that the
+	 * total through the new one is still greater than any seen before.
+	 */
+	private void matchTime(Pattern pattern) {
+		long previous = getTimeVersion();
+		timeMatch = pattern;
+		timeVersion.set(previous + 1);
+	}
 
-		return transform(interval, useOffset);
+	/**
+	 * Signals that this pattern's time parameters have changed (must be
+	 * called after the change is visible), so that the compiled time
+	 * transforms of this pattern and its descendants are rebuilt.
+	 */
+	protected void timeChanged() {
+		timeVersion.incrementAndGet();
 	}
 
 	/**
@@ -621,22 +809,11 @@ public class Pattern implements Cloneable {
 	public Interval transform(Interval interval, boolean useOffset) {
 		BigFraction scale = getTimeScale();
 
-		boolean positiveScale = scale.compareTo(BigFraction.ZERO) > 0;
-
-		if (positiveScale) {
-			interval = interval.multiply(scale);
-		} else {
-			interval = interval.multiplyMod(scale, loopInterval);
-		}
-
-		if (useOffset)
-			interval = interval.add(getTimeOffset());
-
-		if (getRepeats() > 0 || (isLooping && positiveScale)) {
-			interval = interval.modulo(loopInterval);
-		}
+		boolean positiveScale = scale.getNumerator().signum() > 0;
 
-		return interval;
+		return TimeTransform.apply(interval, scale,
+				useOffset ? getTimeOffset() : BigFraction.ZERO, loopInterval,
+				getRepeats() > 0 || (isLooping && positiveScale));
 	}
 
 	/**
@@ -646,6 +823,7 @@ public class Pattern implements Cloneable {
 	 */
 	public Pattern once() {
 		isLooping = false;
+		timeChanged();
 		return this;
 	}
 
@@ -656,8 +834,10 @@ public class Pattern implements Cloneable {
 	 */
 	public Pattern loop() {
 		isLooping = true;
-		if (getEvents() != null) {
-			setLoopInterval(getEvents().getTotalInterval());
+		timeChanged();
+		Interval total = getTotalEventInterval();
+		if (total != null) {
+			setLoopInterval(total);
 		}
 		return this;
 	}
@@ -673,22 +853,31 @@ public class Pattern implements Cloneable {
 		if (getEvents() != null) {
 			EventCollection events = getEvents();
 			Collection<LEvent> eventsToRepeat = events.values();
+			Interval total = events.getTotalInterval();
+			if (total == null)
+				return this;
 
-			EventCollection newEvents = new EventCollection();
+			BigFraction length = total.getEnd();
+			List<LEvent> newEvents = new ArrayList<LEvent>();
 
 			for (int i = 1; i < n; i++) {
-				newEvents.addAfterwards(eventsToRepeat);
+				BigFraction offset = length.multiply(i);
+				for (LEvent e : eventsToRepeat) {
+					newEvents.add(new LEvent(e.getInterval().add(offset), e
+							.getValue()));
+				}
 			}
 
-			events.addAfterwards(newEvents.values());
+			events.addAll(newEvents);
 		} else {
 			repeats.set(n);
+			timeChanged();
 			if (!repeaterSet) {
 				every(loopInterval.getSize(), new Callable<Void>() {
 					@Override
 					public Void call() {
-						if (repeats.get() > 0)
-							repeats.decrementAndGet();
+						if (repeats.get() > 0 && repeats.decrementAndGet() == 0)
+							timeChanged();
 						return null;
 					}
 				});
@@ -873,8 +1062,12 @@ public class Pattern implements Cloneable {
 	}
 
 	public int asMidiCommand(Interval now) {
+		return asMidiCommand(now, null);
+	}
+
+	public int asMidiCommand(Interval now, LEvent lineage) {
 		Integer result = (Integer) getAs(MappingType.MIDI_COMMAND,
-				getValueFor(now));
+				getValueFor(now, lineage));
 		return getIntOrElse(result, Integer.MIN_VALUE);
 	}
 
@@ -904,8 +1097,12 @@ public class Pattern implements Cloneable {
 	}
 
 	public int asMidiChannel(Interval now) {
+		return asMidiChannel(now, null);
+	}
+
+	public int asMidiChannel(Interval now, LEvent lineage) {
 		Integer result = (Integer) getAs(MappingType.MIDI_CHANNEL,
-				getValueFor(now));
+				getValueFor(now, lineage));
 		return getIntOrElse(result, Integer.MIN_VALUE);
 	}
 
@@ -935,8 +1132,12 @@ public class Pattern implements Cloneable {
 	}
 
 	public int asMidiData1(Interval now) {
+		return asMidiData1(now, null);
+	}
+
+	public int asMidiData1(Interval now, LEvent lineage) {
 		Integer result = (Integer) getAs(MappingType.MIDI_DATA1,
-				getValueFor(now));
+				getValueFor(now, lineage));
 		int outcome = getIntOrElse(result, Integer.MIN_VALUE)
 				+ getIntOrElse(transposition, 0);
 		return outcome;
@@ -994,8 +1195,12 @@ public class Pattern implements Cloneable {
 	}
 
 	public int asMidiData2(Interval now) {
+		return asMidiData2(now, null);
+	}
+
+	public int asMidiData2(Interval now, LEvent lineage) {
 		Integer result = (Integer) getAs(MappingType.MIDI_DATA2,
-				getValueFor(now));
+				getValueFor(now, lineage));
 		return getIntOrElse(result, Integer.MIN_VALUE);
 	}
 
@@ -1066,8 +1271,8 @@ public class Pattern implements Cloneable {
 				EventBoundaryProxy.ONSET));
 		commands.addChild(onsets);
 		onsets.putMapping(MappingType.CALLABLE_WITH_ARG,
-				new MidiMessageMapping(loom.midiBusWrapper, commands, channels,
-						notes, velocities));
+				new MidiMessageMapping(loom, commands, channels, notes,
+						velocities));
 
 		return this;
 	}
@@ -1217,13 +1422,18 @@ public class Pattern implements Cloneable {
 
 		putMapping(MappingType.OSC_BUNDLE, new OscBundleMapping(oscPatterns));
 
-		hits.onOnset(new Callable<Void>() {
+		hits.onOnset(new RoutedCallable<Void>() {
 			@Override
 			public Void call() {
 				loom.oscP5Wrapper.get().send(original.asOscBundle(),
-						remoteAddress);
+						remoteAddress, loom.getTargetMillis());
 				return null;
 			}
+
+			@Override
+			public Object getRoute() {
+				return loom.oscP5Wrapper;
+			}
 		});
 
 		return this;
@@ -1269,12 +1479,17 @@ public class Pattern implements Cloneable {
 
 		final Pattern follow = new Pattern(loom, new FollowerFunction(this));
 		follow.asFloat(lo, hi);
-		follow.asCallable(new Callable<Void>() {
+		follow.asCallable(new RoutedCallable<Void>() {
 			@Override
 			public Void call() {
 				synth.set(param, follow.asFloat());
 				return null;
 			}
+
+			@Override
+			public Object getRoute() {
+				return loom.oscP5Wrapper;
+			}
 		});
 
 		addChild(follow);
@@ -1296,12 +1511,17 @@ public class Pattern implements Cloneable {
 
 		addChild(hits);
 
-		hits.onOnset(new Callable<Void>() {
+		hits.onOnset(new RoutedCallable<Void>() {
 			@Override
 			public Void call() {
 				sample.trigger();
 				return null;
 			}
+
+			@Override
+			public Object getRoute() {
+				return sample;
+			}
 		});
 
 		return this;
@@ -1321,12 +1541,17 @@ public class Pattern implements Cloneable {
 
 		addChild(hits);
 
-		hits.onOnset(new Callable<Void>() {
+		hits.onOnset(new RoutedCallable<Void>() {
 			@Override
 			public Void call() {
 				soundFile.play();
 				return null;
 			}
+
+			@Override
+			public Object getRoute() {
+				return soundFile;
+			}
 		});
 
 		return this;
@@ -1513,6 +1738,112 @@ public class Pattern implements Cloneable {
 		return result;
 	}
 
+	/**
+	 * Finds how long it will be (in the same time units as
+	 * <code>interval</code>) before the callbacks returned by
+	 * {@link #getActiveMappingsFor(Interval)} could change, assuming the query
+	 * interval keeps moving forward. Schedulers can use this to skip the time
+	 * in between.
+	 * 
+	 * @param interval
+	 *            the interval most recently evaluated
+	 * @return the time until the next event boundary, zero if the pattern must
+	 *         be evaluated continuously (e.g. for a continuous function), or
+	 *         null if there are no further boundaries
+	 */
+	public BigFraction getTimeUntilNextBoundary(Interval interval) {
+		return getTimeUntilNextBoundary(interval, false);
+	}
+
+	/**
+	 * Finds the time until the next event boundary, optionally leaving out
+	 * descendants that must be evaluated continuously. A scheduler that polls
+	 * those descendants separately (see {@link #hasContinuousActiveMappings()})
+	 * can then sleep until the next discrete event.
+	 * 
+	 * @param interval
+	 *            the interval most recently evaluated
+	 * @param skipContinuous
+	 *            whether to ignore descendants that must be evaluated
+	 *            continuously
+	 * @return the time until the next event boundary, zero if the pattern must
+	 *         be evaluated on every update, or null if there are no further
+	 *         boundaries
+	 * @see #getTimeUntilNextBoundary(Interval)
+	 */
+	public BigFraction getTimeUntilNextBoundary(Interval interval,
+			boolean skipContinuous) {
+		if (isConcretePattern())
+			return getConcretePattern().getTimeUntilNextBoundary(interval,
+					skipContinuous);
+
+		BigFraction result = null;
+		if (children == null)
+			return result;
+
+		BigFraction scale = getTimeScale();
+		boolean positiveScale = scale.getNumerator().signum() > 0;
+		boolean wraps = getRepeats() > 0 || isLooping;
+
+		for (Pattern child : children) {
+			if (!child.hasActiveMappings())
+				continue;
+
+			// a reversed pattern runs backwards through its children's time
+			if (!positiveScale)
+				return BigFraction.ZERO;
+
+			Interval transformed = transform(interval, child.useParentOffset);
+			BigFraction untilChild = child.getTimeUntilNextBoundary(
+					transformed, skipContinuous);
+
+			if (wraps && loopInterval != null) {
+				BigFraction untilWrap = loopInterval.getEnd().subtract(
+						transformed.getEnd());
+				untilChild = earliest(untilChild, untilWrap);
+			}
+
+			if (untilChild == null)
+				continue;
+			if (untilChild.getNumerator().signum() <= 0)
+				return BigFraction.ZERO;
+
+			result = earliest(result, untilChild.divide(scale));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Checks whether any descendant with active mappings must be evaluated on
+	 * every update, rather than only at its event boundaries.
+	 * 
+	 * @return true if this pattern has continuous active mappings
+	 */
+	public boolean hasContinuousActiveMappings() {
+		if (isConcretePattern())
+			return getConcretePattern().hasContinuousActiveMappings();
+
+		if (children != null) {
+			for (Pattern pattern : children) {
+				if (pattern.hasContinuousActiveMappings())
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the earlier of two times, ignoring nulls
+	 */
+	protected static BigFraction earliest(BigFraction a, BigFraction b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		return Ticks.compare(a, b) <= 0 ? a : b;
+	}
+
 	public boolean isConcretePattern() {
 		return isConcrete;
 	}
@@ -1561,7 +1892,7 @@ public class Pattern implements Cloneable {
 
 	public Pattern select(int i) {
 		selectedChild = i;
-		timeMatch = getChild(i);
+		matchTime(getChild(i));
 		return this;
 	}
 
@@ -1754,11 +2085,27 @@ public class Pattern implements Cloneable {
 		return thenPat;
 	}
 
+	/**
+	 * Replaces this pattern's events with the result of a rewriter, which is
+	 * taken from the rewriter's cache if it has one (see
+	 * {@link EventRewriter#setCache(RewriteCache)}).
+	 * 
+	 * @param eventRewriter
+	 *            the rewriter to apply
+	 * @return the current pattern
+	 */
 	public Pattern rewrite(EventRewriter eventRewriter) {
 		EventCollection events = getEvents();
 		if (events != null) {
-			EventCollection newEvents = eventRewriter.apply(events);
-			getConcretePattern().events = newEvents;
+			ConcretePattern pat = getConcretePattern();
+			RewriteCache cache = eventRewriter.getCache();
+			if (cache != null) {
+				pat.rewriteLineage = cache.rewrite(eventRewriter, events,
+						pat.rewriteLineage);
+				pat.events = pat.rewriteLineage.getResult();
+			} else {
+				pat.events = eventRewriter.apply(events);
+			}
 		} else {
 			throw new IllegalStateException(
 					"This pattern does not contain events.");
@@ -1766,6 +2113,39 @@ public class Pattern implements Cloneable {
 		return this;
 	}
 
+	/**
+	 * Like {@link #rewrite(EventRewriter)}, but the rewritten events are
+	 * computed as they are queried rather than all at once.
+	 * 
+	 * An {@link LsysRewriter} whose rules are all L-system rules, applied to
+	 * an {@link EventCollection}, is evaluated as a tree (see
+	 * {@link LsysRewriter#lazy(EventCollection)}), so that many generations
+	 * can be used and rules see each event's index. Any other rewriter
+	 * becomes a view that rewrites only the queried events (see
+	 * {@link EventRewriter#view(EventQueryable)}), so the rewritten events are
+	 * never stored.
+	 * 
+	 * @param rewriter
+	 *            the rewriter to apply
+	 * @return the current pattern
+	 */
+	public Pattern rewriteLazily(EventRewriter rewriter) {
+		ConcretePattern pat = getConcretePattern();
+		if (pat == null || pat.events == null)
+			throw new IllegalStateException(
+					"This pattern does not contain events.");
+
+		if (rewriter instanceof LsysRewriter
+				&& ((LsysRewriter) rewriter).hasOnlyLsysRules()
+				&& pat.events instanceof EventCollection) {
+			pat.events = ((LsysRewriter) rewriter)
+					.lazy((EventCollection) pat.events);
+		} else {
+			pat.events = rewriter.view(pat.events);
+		}
+		return this;
+	}
+
 	public Pattern onOnset(Callable<Void> callable) {
 		return onBoundary(EventBoundaryProxy.ONSET, callable);
 	}
@@ -1809,6 +2189,7 @@ public class Pattern implements Cloneable {
 
 	public Pattern clear() {
 		children.clear();
+		structureChanged();
 		return this;
 	}
 
@@ -1832,6 +2213,7 @@ public class Pattern implements Cloneable {
 
 	public void setTimeOffset(BigFraction timeOffset) {
 		this.timeOffset = timeOffset;
+		timeChanged();
 	}
 
 	public BigFraction getTimeScale() {
@@ -1847,10 +2229,11 @@ public class Pattern implements Cloneable {
 
 	public void setTimeScale(BigFraction timeScale) {
 		this.timeScale = timeScale;
+		timeChanged();
 	}
 
 	public void setTimeMatch(Pattern pattern) {
-		this.timeMatch = pattern;
+		matchTime(pattern);
 	}
 
 	public Interval getLoopInterval() {
@@ -1859,6 +2242,7 @@ public class Pattern implements Cloneable {
 
 	public void setLoopInterval(Interval loopInterval) {
 		this.loopInterval = loopInterval;
+		timeChanged();
 	}
 
 	/**
@@ -1868,12 +2252,8 @@ public class Pattern implements Cloneable {
 	 * @return the interval
 	 */
 	public Interval getTotalInterval() {
-		Interval result;
-
-		EventCollection events = getEvents();
-		if (events != null)
-			result = events.getTotalInterval();
-		else
+		Interval result = getTotalEventInterval();
+		if (result == null)
 			result = loopInterval;
 
 		int repeatN = repeats.get();
@@ -1905,6 +2285,33 @@ public class Pattern implements Cloneable {
 			getConcretePattern().setValueScale(valueScale);
 	}
 
+	/**
+	 * @return the span of this pattern's events, or null if it has none
+	 */
+	private Interval getTotalEventInterval() {
+		ConcretePattern pat = getConcretePattern();
+		if (pat == null || pat.events == null)
+			return null;
+
+		if (pat.events instanceof EventStore)
+			return ((EventStore) pat.events).getTotalInterval();
+		return null;
+	}
+
+	/**
+	 * Replaces this pattern's events with a compact, read-only copy (see
+	 * {@link EventCollection#freeze()}), to save memory once a large score
+	 * has been loaded. The events can no longer be changed afterwards.
+	 * 
+	 * @return the current pattern
+	 */
+	public Pattern freeze() {
+		EventCollection events = getEvents();
+		if (events != null)
+			getConcretePattern().events = events.freeze();
+		return this;
+	}
+
 	protected EventCollection getEvents() {
 		EventCollection events = null;
 		ConcretePattern pat = getConcretePattern();
@@ -3,7 +3,9 @@
  */
 package com.corajr.loom;
 
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Default holder for a set of Patterns. Follows the Collections API, with
@@ -15,19 +17,206 @@ import java.util.concurrent.*;
 public class PatternCollection extends CopyOnWriteArrayList<Pattern> {
 	private static final long serialVersionUID = -6951516407692217125L;
 
+	/**
+	 * Incremented whenever this collection is modified.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * The active patterns, with this collection's version and the sum of its
+	 * patterns' structure versions when they were found. While this
+	 * collection is unchanged it holds the same patterns, so the sum of their
+	 * (increasing) versions changes exactly when one of their subtrees does.
+	 */
+	private static class Snapshot {
+		final long version;
+		final long patternVersions;
+		final PatternCollection patterns;
+
+		Snapshot(long version, long patternVersions,
+				PatternCollection patterns) {
+			this.version = version;
+			this.patternVersions = patternVersions;
+			this.patterns = patterns;
+		}
+	}
+
+	private transient volatile Snapshot activeSnapshot = null;
+
+	/**
+	 * True for the collections returned by
+	 * {@link #getPatternsWithActiveMappings()}, which are shared between
+	 * callers.
+	 */
+	private final boolean readOnly;
+
+	public PatternCollection() {
+		super();
+		readOnly = false;
+	}
+
+	public PatternCollection(Collection<? extends Pattern> patterns) {
+		this(patterns, false);
+	}
+
+	private PatternCollection(Collection<? extends Pattern> patterns,
+			boolean readOnly) {
+		super(patterns);
+		this.readOnly = readOnly;
+	}
+
+	private void checkWritable() {
+		if (readOnly)
+			throw new UnsupportedOperationException(
+					"The active patterns cannot be modified.");
+	}
+
+	/**
+	 * Signals that this collection has changed (must be called after the
+	 * change is visible).
+	 */
+	private void invalidate() {
+		version.incrementAndGet();
+	}
+
+	private long getPatternVersions() {
+		long sum = 0;
+		for (Pattern pattern : this) {
+			sum += pattern.getStructureVersion();
+		}
+		return sum;
+	}
+
 	/**
 	 * Finds all the patterns that have external mappings, i.e. those with
 	 * functions that must be triggered at each update rather than passively
 	 * queried.
 	 * 
+	 * The result is cached until this collection or the tree of one of its
+	 * patterns is modified (via <code>addChild</code>,
+	 * <code>removeChild</code>, <code>clear</code> or <code>putMapping</code>),
+	 * and shared between callers, so it is read-only.
+	 * 
 	 * @return the relevant subset of patterns
+	 * @throws UnsupportedOperationException
+	 *             from any attempt to modify the result
 	 */
 	public PatternCollection getPatternsWithActiveMappings() {
-		PatternCollection actives = new PatternCollection();
+		long version = this.version.get();
+		long patternVersions = getPatternVersions();
+		Snapshot snapshot = activeSnapshot;
+		if (snapshot != null && snapshot.version == version
+				&& snapshot.patternVersions == patternVersions)
+			return snapshot.patterns;
+
+		List<Pattern> actives = new ArrayList<Pattern>();
 		for (Pattern pattern : this) {
 			if (pattern.hasActiveMappings())
 				actives.add(pattern);
 		}
-		return actives;
+
+		PatternCollection result = new PatternCollection(actives, true);
+		activeSnapshot = new Snapshot(version, patternVersions, result);
+		return result;
+	}
+
+	@Override
+	public boolean add(Pattern e) {
+		checkWritable();
+		boolean result = super.add(e);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public void add(int index, Pattern element) {
+		checkWritable();
+		super.add(index, element);
+		invalidate();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Pattern> c) {
+		checkWritable();
+		boolean result = super.addAll(c);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends Pattern> c) {
+		checkWritable();
+		boolean result = super.addAll(index, c);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public int addAllAbsent(Collection<? extends Pattern> c) {
+		checkWritable();
+		int result = super.addAllAbsent(c);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public boolean addIfAbsent(Pattern e) {
+		checkWritable();
+		boolean result = super.addIfAbsent(e);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public Pattern set(int index, Pattern element) {
+		checkWritable();
+		Pattern result = super.set(index, element);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public Pattern remove(int index) {
+		checkWritable();
+		Pattern result = super.remove(index);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		checkWritable();
+		boolean result = super.remove(o);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		checkWritable();
+		boolean result = super.removeAll(c);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		checkWritable();
+		boolean result = super.retainAll(c);
+		invalidate();
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		checkWritable();
+		super.clear();
+		invalidate();
+	}
+
+	@Override
+	public List<Pattern> subList(int fromIndex, int toIndex) {
+		List<Pattern> list = super.subList(fromIndex, toIndex);
+		return readOnly ? Collections.unmodifiableList(list) : list;
 	}
 }
@@ -0,0 +1,405 @@
+package com.corajr.loom;
+
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Ticks;
+
+/**
+ * Stores events that may overlap, such as the notes of a chord or a sustained
+ * pedal note beneath a melody, so that they can be held by a single pattern.
+ *
+ * Events are kept in an augmented interval tree (an AVL tree ordered by start,
+ * where each node also records the latest end beneath it), so that finding the
+ * events overlapping an interval takes O(log n + k) time for k results. The
+ * tree is persistent: additions copy the path to the changed node and then
+ * publish the new root, so queries never block and always see a consistent
+ * set of events.
+ *
+ * @author corajr
+ */
+public class PolyphonicEventCollection implements BoundaryQueryable,
+		EventStore, VersionedQueryable {
+
+	private static final class Node {
+		final LEvent event;
+		final long sequence;
+		final Node left;
+		final Node right;
+		final int height;
+		final int size;
+
+		/**
+		 * The latest end of any event in this subtree.
+		 */
+		final Interval maxEnd;
+
+		Node(LEvent event, long sequence, Node left, Node right) {
+			this.event = event;
+			this.sequence = sequence;
+			this.left = left;
+			this.right = right;
+			this.height = 1 + Math.max(height(left), height(right));
+			this.size = 1 + size(left) + size(right);
+
+			Interval latest = event.getInterval();
+			if (left != null && compareEnds(left.maxEnd, latest) > 0)
+				latest = left.maxEnd;
+			if (right != null && compareEnds(right.maxEnd, latest) > 0)
+				latest = right.maxEnd;
+			this.maxEnd = latest;
+		}
+
+		Node with(Node left, Node right) {
+			return new Node(event, sequence, left, right);
+		}
+	}
+
+	private volatile Node root = null;
+	private long nextSequence = 0;
+
+	/**
+	 * Counts the changes made to this collection.
+	 */
+	private volatile long version = 0;
+
+	public PolyphonicEventCollection() {
+	}
+
+	/**
+	 * Creates a collection holding the given events.
+	 *
+	 * @param events
+	 *            the events to add
+	 * @return a new collection
+	 */
+	public static PolyphonicEventCollection fromEvents(
+			Collection<LEvent> events) {
+		PolyphonicEventCollection collection = new PolyphonicEventCollection();
+		collection.addAll(events);
+		return collection;
+	}
+
+	public static PolyphonicEventCollection fromEvents(LEvent... events) {
+		return fromEvents(Arrays.asList(events));
+	}
+
+	/**
+	 * Adds an event, which may overlap any number of existing events.
+	 *
+	 * @param e
+	 *            the event to add
+	 */
+	public synchronized void add(LEvent e) {
+		root = insert(root, e, nextSequence++);
+		version++;
+	}
+
+	/**
+	 * Adds several events at once; queries will see either none or all of
+	 * them.
+	 *
+	 * @param events
+	 *            the events to add
+	 */
+	public synchronized void addAll(Collection<LEvent> events) {
+		Node updated = root;
+		for (LEvent e : events) {
+			updated = insert(updated, e, nextSequence++);
+		}
+		root = updated;
+		version++;
+	}
+
+	/**
+	 * Removes one occurrence of an event.
+	 *
+	 * @param e
+	 *            the event to remove
+	 * @return true if the event was found
+	 */
+	public synchronized boolean remove(LEvent e) {
+		Node updated = delete(root, e);
+		if (updated == root)
+			return false;
+		root = updated;
+		version++;
+		return true;
+	}
+
+	public synchronized void clear() {
+		root = null;
+		version++;
+	}
+
+	/**
+	 * @return a number that changes whenever an event is added or removed
+	 */
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
+	public int size() {
+		return size(root);
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * @return all events, ordered by start
+	 */
+	public List<LEvent> values() {
+		List<LEvent> result = new ArrayList<LEvent>(size());
+		collect(root, result);
+		return result;
+	}
+
+	/**
+	 * Returns the events overlapping the interval (see
+	 * {@link LEvent#containedBy(Interval)}), ordered by start.
+	 */
+	@Override
+	public Collection<LEvent> getForInterval(Interval interval) {
+		List<LEvent> result = new ArrayList<LEvent>();
+		search(root, interval, result);
+		return result;
+	}
+
+	@Override
+	public BigFraction getNextBoundary(BigFraction time) {
+		BigFraction next = null;
+
+		// the earliest start after the given time
+		for (Node node = root; node != null;) {
+			BigFraction start = node.event.getInterval().getStart();
+			if (Ticks.compare(start, time) > 0) {
+				next = start;
+				node = node.left;
+			} else {
+				node = node.right;
+			}
+		}
+
+		// the earliest end among the events still sounding
+		return earliestEnd(root, time, next);
+	}
+
+	/**
+	 * Finds the earliest end after <code>time</code> of the events that have
+	 * started by then, if it is before <code>next</code>.
+	 */
+	private static BigFraction earliestEnd(Node node, BigFraction time,
+			BigFraction next) {
+		while (node != null
+				&& Ticks.compare(node.maxEnd.getEnd(), time) > 0) {
+			next = earliestEnd(node.left, time, next);
+
+			Interval interval = node.event.getInterval();
+			if (Ticks.compare(interval.getStart(), time) > 0)
+				break;
+
+			BigFraction end = interval.getEnd();
+			if (Ticks.compare(end, time) > 0
+					&& (next == null || Ticks.compare(end, next) < 0))
+				next = end;
+
+			node = node.right;
+		}
+		return next;
+	}
+
+	@Override
+	public Interval getTotalInterval() {
+		Node node = root;
+		if (node == null)
+			return null;
+
+		Node first = node;
+		while (first.left != null)
+			first = first.left;
+
+		return new Interval(first.event.getInterval().getStart(),
+				node.maxEnd.getEnd());
+	}
+
+	private static void search(Node node, Interval query, List<LEvent> result) {
+		while (node != null) {
+			// nothing here ends after the query starts
+			if (!endsAfterStart(node.maxEnd, query))
+				return;
+
+			search(node.left, query, result);
+
+			// this event and everything to the right start after the query
+			if (startsAfterEnd(node.event.getInterval(), query))
+				return;
+
+			if (node.event.containedBy(query))
+				result.add(node.event);
+
+			node = node.right;
+		}
+	}
+
+	private static void collect(Node node, List<LEvent> result) {
+		while (node != null) {
+			collect(node.left, result);
+			result.add(node.event);
+			node = node.right;
+		}
+	}
+
+	private static Node insert(Node node, LEvent e, long sequence) {
+		if (node == null)
+			return new Node(e, sequence, null, null);
+
+		if (compare(e, sequence, node) < 0)
+			return balance(node.with(insert(node.left, e, sequence),
+					node.right));
+		else
+			return balance(node.with(node.left,
+					insert(node.right, e, sequence)));
+	}
+
+	private static Node delete(Node node, LEvent e) {
+		if (node == null)
+			return null;
+
+		int cmp = compareEvents(e, node.event);
+		if (cmp == 0 && node.event.equals(e)) {
+			if (node.left == null)
+				return node.right;
+			if (node.right == null)
+				return node.left;
+
+			Node successor = node.right;
+			while (successor.left != null)
+				successor = successor.left;
+			Node right = deleteFirst(node.right);
+			return balance(new Node(successor.event, successor.sequence,
+					node.left, right));
+		}
+
+		// equal keys may lie on either side, depending on insertion order
+		if (cmp <= 0) {
+			Node left = delete(node.left, e);
+			if (left != node.left)
+				return balance(node.with(left, node.right));
+		}
+		if (cmp >= 0) {
+			Node right = delete(node.right, e);
+			if (right != node.right)
+				return balance(node.with(node.left, right));
+		}
+		return node;
+	}
+
+	private static Node deleteFirst(Node node) {
+		if (node.left == null)
+			return node.right;
+		return balance(node.with(deleteFirst(node.left), node.right));
+	}
+
+	private static Node balance(Node node) {
+		int diff = height(node.left) - height(node.right);
+		if (diff > 1) {
+			Node left = node.left;
+			if (height(left.left) < height(left.right))
+				left = rotateLeft(left);
+			return rotateRight(node.with(left, node.right));
+		} else if (diff < -1) {
+			Node right = node.right;
+			if (height(right.right) < height(right.left))
+				right = rotateRight(right);
+			return rotateLeft(node.with(node.left, right));
+		}
+		return node;
+	}
+
+	private static Node rotateRight(Node node) {
+		Node left = node.left;
+		return left.with(left.left, node.with(left.right, node.right));
+	}
+
+	private static Node rotateLeft(Node node) {
+		Node right = node.right;
+		return right.with(node.with(node.left, right.left), right.right);
+	}
+
+	private static int height(Node node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	/**
+	 * Orders events by start, then end, then value, then insertion order.
+	 */
+	private static int compare(LEvent e, long sequence, Node node) {
+		int cmp = compareEvents(e, node.event);
+		if (cmp != 0)
+			return cmp;
+		return sequence < node.sequence ? -1 : (sequence == node.sequence ? 0
+				: 1);
+	}
+
+	private static int compareEvents(LEvent a, LEvent b) {
+		Interval ai = a.getInterval();
+		Interval bi = b.getInterval();
+		int cmp = compareStarts(ai, bi);
+		if (cmp == 0)
+			cmp = compareEnds(ai, bi);
+		if (cmp == 0)
+			cmp = Double.compare(a.getValue(), b.getValue());
+		return cmp;
+	}
+
+	private static int compareStarts(Interval a, Interval b) {
+		if (a.isTickExact() && b.isTickExact())
+			return Long.compare(a.getStartTicks(), b.getStartTicks());
+		return Ticks.compare(a.getStart(), b.getStart());
+	}
+
+	private static int compareEnds(Interval a, Interval b) {
+		if (a.isTickExact() && b.isTickExact())
+			return Long.compare(a.getEndTicks(), b.getEndTicks());
+		return Ticks.compare(a.getEnd(), b.getEnd());
+	}
+
+	private static boolean endsAfterStart(Interval event, Interval query) {
+		if (event.isTickExact() && query.isTickExact())
+			return event.getEndTicks() > query.getStartTicks();
+		return Ticks.compare(event.getEnd(), query.getStart()) > 0;
+	}
+
+	private static boolean startsAfterEnd(Interval event, Interval query) {
+		if (event.isTickExact() && query.isTickExact())
+			return event.getStartTicks() > query.getEndTicks();
+		return Ticks.compare(event.getStart(), query.getEnd()) > 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("PolyphonicEventCollection(\n\t");
+
+		boolean first = true;
+		for (LEvent e : values()) {
+			if (first)
+				first = false;
+			else
+				sb.append(",\n\t");
+			sb.append(e.toString());
+		}
+		sb.append("\n)");
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,122 @@
+package com.corajr.loom;
+
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Ticks;
+
+/**
+ * The queries shared by the read-only stores that keep their events by index,
+ * sorted by start, with start and end in {@link Ticks}. Subclasses say how to
+ * read each event; a query then only examines the events starting between
+ * <code>queryStart - maxDuration</code> and <code>queryEnd</code>, and
+ * creates {@link LEvent}s only for those it returns.
+ *
+ * @author corajr
+ * @see CompactEventCollection
+ * @see MappedEventCollection
+ */
+abstract class TickSortedEvents implements BoundaryQueryable, EventStore,
+		VersionedQueryable {
+	/**
+	 * @return the number of events
+	 */
+	abstract long eventCount();
+
+	/**
+	 * @return the start of the <i>i</i>th event, in ticks
+	 */
+	abstract long startAt(long i);
+
+	/**
+	 * @return the end of the <i>i</i>th event, in ticks
+	 */
+	abstract long endAt(long i);
+
+	/**
+	 * @return the <i>i</i>th event
+	 */
+	abstract LEvent eventAt(long i);
+
+	/**
+	 * @return the longest duration of any event, in ticks
+	 */
+	abstract long getMaxDuration();
+
+	/**
+	 * @return the index of the first event starting after the given tick
+	 */
+	long firstStartAfter(long ticks) {
+		long lo = 0;
+		long hi = eventCount();
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (startAt(mid) <= ticks)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return 0, since the events cannot be changed
+	 */
+	@Override
+	public long getVersion() {
+		return 0;
+	}
+
+	/**
+	 * Returns the events overlapping the interval (see
+	 * {@link LEvent#containedBy(Interval)}).
+	 */
+	@Override
+	public Collection<LEvent> getForInterval(Interval interval) {
+		List<LEvent> result = new ArrayList<LEvent>();
+
+		boolean exact = interval.isTickExact();
+		long queryStart = exact ? interval.getStartTicks()
+				: Ticks.floor(interval.getStart());
+		long queryEnd = exact ? interval.getEndTicks() : Ticks.floor(interval
+				.getEnd());
+
+		long to = firstStartAfter(queryEnd);
+		for (long i = firstStartAfter(queryStart - getMaxDuration()); i < to; i++) {
+			if (exact) {
+				if (endAt(i) > queryStart)
+					result.add(eventAt(i));
+			} else {
+				LEvent e = eventAt(i);
+				if (e.containedBy(interval))
+					result.add(e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Since event boundaries are whole ticks, comparing with the floor of the
+	 * given time gives the same result as comparing with the time itself.
+	 */
+	@Override
+	public BigFraction getNextBoundary(BigFraction time) {
+		long ticks = Ticks.floor(time);
+		long next = Long.MAX_VALUE;
+
+		long i = firstStartAfter(ticks);
+		if (i < eventCount())
+			next = startAt(i);
+
+		// events that started at or before the given time may still end
+		for (long j = firstStartAfter(ticks - getMaxDuration()); j < i; j++) {
+			long end = endAt(j);
+			if (end > ticks && end < next)
+				next = end;
+		}
+
+		return next != Long.MAX_VALUE ? Ticks.toFraction(next) : null;
+	}
+}
@@ -0,0 +1,20 @@
+package com.corajr.loom;
+
+/**
+ * An {@link EventQueryable} that can tell when its events have changed, so
+ * that results computed from them (such as a pattern's last value) can be
+ * reused until then.
+ * 
+ * @author corajr
+ */
+public interface VersionedQueryable extends EventQueryable {
+	/**
+	 * Returns a number that changes whenever the events returned for some
+	 * interval could change. Events that never change may always return 0;
+	 * -1 means the version cannot be told, and nothing computed from the
+	 * events should be reused.
+	 * 
+	 * @return the current version, or -1
+	 */
+	public long getVersion();
+}
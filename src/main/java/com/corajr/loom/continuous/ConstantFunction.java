@@ -18,4 +18,19 @@ public class ConstantFunction extends ContinuousFunction {
 	public double call(BigFraction t) {
 		return value;
 	}
+
+	@Override
+	public double call(double t) {
+		return value;
+	}
+
+	@Override
+	public double call(double start, double end) {
+		return value;
+	}
+
+	@Override
+	public boolean usesDoubles() {
+		return true;
+	}
 }
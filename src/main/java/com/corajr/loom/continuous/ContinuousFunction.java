@@ -31,9 +31,64 @@ public abstract class ContinuousFunction {
 	 * @return a double between 0.0 and 1.0
 	 */
 	public double call(Interval i) {
+		if (usesDoubles())
+			return call(i.getStartDouble(), i.getEndDouble());
+
 		double value = call(i.getStart());
 		value += call(i.getEnd());
 		value /= 2.0;
 		return value;
 	}
+
+	/**
+	 * Returns the value of the function at a point in the cycle given as a
+	 * double. Functions that do not need exact fractions should override this
+	 * and {@link #usesDoubles()}, so that they can be evaluated without
+	 * allocating; by default, the time is converted to a fraction.
+	 * 
+	 * @param t
+	 *            the time, in cycles
+	 * @return a double between 0.0 and 1.0
+	 */
+	public double call(double t) {
+		return call(new BigFraction(t));
+	}
+
+	/**
+	 * Return the average of the function's output at two points in time,
+	 * given as doubles.
+	 * 
+	 * @param start
+	 *            the start of the query interval, in cycles
+	 * @param end
+	 *            the end of the query interval, in cycles
+	 * @return a double between 0.0 and 1.0
+	 */
+	public double call(double start, double end) {
+		return (call(start) + call(end)) / 2.0;
+	}
+
+	/**
+	 * Returns whether {@link #call(Interval)} should evaluate this function
+	 * with doubles (see {@link #call(double, double)}) rather than exact
+	 * fractions.
+	 * 
+	 * @return true if the function is implemented natively for doubles
+	 */
+	public boolean usesDoubles() {
+		return false;
+	}
+
+	/**
+	 * Returns whether the function always gives the same value for the same
+	 * interval, so that its value can be remembered within an update (see
+	 * {@link com.corajr.loom.ConcretePattern#setMemoized(boolean)}). Functions
+	 * with side effects or hidden state, such as {@link TriggerFunction},
+	 * must return false.
+	 * 
+	 * @return true if the function is deterministic
+	 */
+	public boolean isDeterministic() {
+		return true;
+	}
 }
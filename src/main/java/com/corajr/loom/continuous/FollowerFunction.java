@@ -33,4 +33,13 @@ public class FollowerFunction extends ContinuousFunction {
 	public double call(Interval i) {
 		return pattern.getValueFor(i);
 	}
+
+	/**
+	 * The followed pattern can change at any time, so its value is not
+	 * remembered here; the followed pattern remembers its own value instead.
+	 */
+	@Override
+	public boolean isDeterministic() {
+		return false;
+	}
 }
@@ -10,6 +10,16 @@ import org.apache.commons.math3.fraction.BigFraction;
 public class SineFunction extends ContinuousFunction {
 	@Override
 	public double call(BigFraction t) {
-		return (Math.sin(t.multiply(2).doubleValue() * Math.PI) + 1.0) / 2.0;
+		return call(t.doubleValue());
+	}
+
+	@Override
+	public double call(double t) {
+		return (Math.sin(2.0 * t * Math.PI) + 1.0) / 2.0;
+	}
+
+	@Override
+	public boolean usesDoubles() {
+		return true;
 	}
 }
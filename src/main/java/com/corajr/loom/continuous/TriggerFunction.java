@@ -20,6 +20,14 @@ public class TriggerFunction extends ContinuousFunction {
 
 	@Override
 	public double call(BigFraction t) {
+		return call(t.doubleValue());
+	}
+
+	/**
+	 * The time is ignored, so this is used instead of the fractional version.
+	 */
+	@Override
+	public double call(double t) {
 		boolean wasFired = fired.getAndSet(false);
 		if (wasFired) {
 			// will be called twice (once for start and end of interval)
@@ -34,4 +42,17 @@ public class TriggerFunction extends ContinuousFunction {
 		return value > 0 ? 1.0 : 0.0;
 	}
 
+	@Override
+	public boolean usesDoubles() {
+		return true;
+	}
+
+	/**
+	 * Each call counts down, so calls cannot be skipped.
+	 */
+	@Override
+	public boolean isDeterministic() {
+		return false;
+	}
+
 }
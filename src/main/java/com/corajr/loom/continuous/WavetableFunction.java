@@ -0,0 +1,196 @@
+package com.corajr.loom.continuous;
+
+import java.util.Random;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * An oscillator with a period of 1 cycle that reads its shape from a
+ * precomputed table, interpolating linearly between entries, so that each
+ * evaluation is a table read rather than a call to a math function. Values
+ * range between 0.0 and 1.0.
+ *
+ * Tables for the common shapes (sine, triangle, saw, square, pulse, and
+ * smoothed noise) are made by the static methods. Larger tables are more
+ * accurate; discontinuities, as in the saw and square waves, are spread over
+ * one table entry.
+ *
+ * @author corajr
+ */
+public class WavetableFunction extends ContinuousFunction {
+	public static final int DEFAULT_SIZE = 1024;
+
+	/**
+	 * The samples, followed by a copy of the first so that interpolation
+	 * wraps around without a bounds check.
+	 */
+	private final double[] table;
+	private final int size;
+
+	/**
+	 * Creates an oscillator from one cycle of samples, evenly spaced from the
+	 * start of the cycle.
+	 *
+	 * @param samples
+	 *            the samples, between 0.0 and 1.0
+	 */
+	public WavetableFunction(double[] samples) {
+		if (samples.length < 2)
+			throw new IllegalArgumentException(
+					"Must have at least 2 samples!");
+
+		size = samples.length;
+		table = new double[size + 1];
+		System.arraycopy(samples, 0, table, 0, size);
+		table[size] = samples[0];
+	}
+
+	public static WavetableFunction sine() {
+		return sine(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param size
+	 *            the number of samples in the table
+	 * @return a sine wave, like {@link SineFunction}
+	 */
+	public static WavetableFunction sine(int size) {
+		double[] samples = new double[size];
+		for (int i = 0; i < size; i++) {
+			samples[i] = (Math.sin(2.0 * Math.PI * i / size) + 1.0) / 2.0;
+		}
+		return new WavetableFunction(samples);
+	}
+
+	public static WavetableFunction triangle() {
+		return triangle(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param size
+	 *            the number of samples in the table
+	 * @return a triangle wave, rising from 0.0 to 1.0 at the middle of the
+	 *         cycle and falling back again
+	 */
+	public static WavetableFunction triangle(int size) {
+		double[] samples = new double[size];
+		for (int i = 0; i < size; i++) {
+			double phase = (double) i / size;
+			samples[i] = phase < 0.5 ? 2.0 * phase : 2.0 - 2.0 * phase;
+		}
+		return new WavetableFunction(samples);
+	}
+
+	public static WavetableFunction saw() {
+		return saw(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param size
+	 *            the number of samples in the table
+	 * @return a sawtooth wave, rising from 0.0 to 1.0 over the cycle
+	 */
+	public static WavetableFunction saw(int size) {
+		double[] samples = new double[size];
+		for (int i = 0; i < size; i++) {
+			samples[i] = (double) i / (size - 1);
+		}
+		return new WavetableFunction(samples);
+	}
+
+	public static WavetableFunction square() {
+		return pulse(0.5, DEFAULT_SIZE);
+	}
+
+	public static WavetableFunction square(int size) {
+		return pulse(0.5, size);
+	}
+
+	public static WavetableFunction pulse(double width) {
+		return pulse(width, DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param width
+	 *            the fraction of the cycle spent at 1.0
+	 * @param size
+	 *            the number of samples in the table
+	 * @return a pulse wave, at 1.0 from the start of the cycle for
+	 *         <code>width</code> and at 0.0 for the rest
+	 */
+	public static WavetableFunction pulse(double width, int size) {
+		if (width < 0.0 || width > 1.0)
+			throw new IllegalArgumentException(
+					"Width must be between 0.0 and 1.0!");
+
+		double[] samples = new double[size];
+		for (int i = 0; i < size; i++) {
+			samples[i] = (double) i / size < width ? 1.0 : 0.0;
+		}
+		return new WavetableFunction(samples);
+	}
+
+	public static WavetableFunction noise(long seed) {
+		return noise(16, seed, DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param points
+	 *            the number of random values per cycle
+	 * @param seed
+	 *            the seed for the random values, so that the same seed always
+	 *            gives the same noise
+	 * @param size
+	 *            the number of samples in the table
+	 * @return smoothed noise, passing through random values at even intervals
+	 *         with cosine interpolation in between, and repeating every cycle
+	 */
+	public static WavetableFunction noise(int points, long seed, int size) {
+		if (points < 1)
+			throw new IllegalArgumentException("Must have at least 1 point!");
+
+		Random random = new Random(seed);
+		double[] values = new double[points];
+		for (int i = 0; i < points; i++) {
+			values[i] = random.nextDouble();
+		}
+
+		double[] samples = new double[size];
+		for (int i = 0; i < size; i++) {
+			double x = (double) i * points / size;
+			int p = (int) x;
+			double mu = (1.0 - Math.cos((x - p) * Math.PI)) / 2.0;
+			double a = values[p];
+			double b = values[(p + 1) % points];
+			samples[i] = a + mu * (b - a);
+		}
+		return new WavetableFunction(samples);
+	}
+
+	/**
+	 * @return the number of samples in the table
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public double call(BigFraction t) {
+		return call(t.doubleValue());
+	}
+
+	@Override
+	public double call(double t) {
+		double x = (t - Math.floor(t)) * size;
+		int i = (int) x;
+		if (i >= size) // t just below a whole cycle may round up
+			i = size - 1;
+		double a = table[i];
+		return a + (x - i) * (table[i + 1] - a);
+	}
+
+	@Override
+	public boolean usesDoubles() {
+		return true;
+	}
+}
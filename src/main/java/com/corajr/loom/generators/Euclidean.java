@@ -0,0 +1,70 @@
+package com.corajr.loom.generators;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * A Euclidean rhythm: <i>pulses</i> hits spread as evenly as possible over
+ * <i>steps</i> steps, as in Toussaint's "The Euclidean Algorithm Generates
+ * Traditional Musical Rhythms". Whether a step is a hit is computed directly
+ * from its position, so nothing is stored.
+ *
+ * @author corajr
+ */
+public class Euclidean extends StepGenerator {
+	private final int pulses;
+	private final int rotation;
+
+	/**
+	 * Creates a rhythm lasting one cycle.
+	 *
+	 * @param pulses
+	 *            the number of hits
+	 * @param steps
+	 *            the number of steps
+	 */
+	public Euclidean(int pulses, int steps) {
+		this(pulses, steps, 0);
+	}
+
+	public Euclidean(int pulses, int steps, int rotation) {
+		this(pulses, steps, rotation, BigFraction.ONE);
+	}
+
+	/**
+	 * @param pulses
+	 *            the number of hits
+	 * @param steps
+	 *            the number of steps
+	 * @param rotation
+	 *            the number of steps by which to rotate the rhythm to the left
+	 * @param period
+	 *            the length of the rhythm, in cycles
+	 */
+	public Euclidean(int pulses, int steps, int rotation, BigFraction period) {
+		super(period, steps);
+		if (pulses < 0 || pulses > steps)
+			throw new IllegalArgumentException(
+					"Pulses must be between 0 and the number of steps!");
+		this.pulses = pulses;
+		this.rotation = ((rotation % steps) + steps) % steps;
+	}
+
+	public int getPulses() {
+		return pulses;
+	}
+
+	/**
+	 * A step is a hit when the running total of <i>pulses</i> per step
+	 * wraps around <i>steps</i>, which puts the first hit on step 0.
+	 */
+	@Override
+	protected int hitsAt(int step) {
+		long position = (step + rotation) % getSteps();
+		return (position * pulses) % getSteps() < pulses ? 1 : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Euclidean(" + pulses + ", " + getSteps() + ")";
+	}
+}
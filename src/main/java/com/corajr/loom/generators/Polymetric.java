@@ -0,0 +1,114 @@
+package com.corajr.loom.generators;
+
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+import com.corajr.loom.BoundaryQueryable;
+import com.corajr.loom.LEvent;
+import com.corajr.loom.VersionedQueryable;
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Ticks;
+
+/**
+ * Overlays several generators, typically of different lengths, so that they
+ * drift against each other and only line up again after the least common
+ * multiple of their periods. The layers are queried separately and their
+ * events merged, so the events may overlap.
+ *
+ * @author corajr
+ */
+public class Polymetric implements BoundaryQueryable, VersionedQueryable {
+	private final List<BoundaryQueryable> layers;
+
+	public Polymetric(BoundaryQueryable... layers) {
+		this(Arrays.asList(layers));
+	}
+
+	public Polymetric(List<BoundaryQueryable> layers) {
+		this.layers = new ArrayList<BoundaryQueryable>(layers);
+	}
+
+	/**
+	 * Creates layers that share a step size but repeat after different numbers
+	 * of steps, each accented (value 1.0) on its first step and 0.5 elsewhere.
+	 * For example, <code>steps(new BigFraction(1, 4), 3, 4)</code> plays three
+	 * against four.
+	 *
+	 * @param stepSize
+	 *            the length of a step, in cycles
+	 * @param lengths
+	 *            the number of steps in each layer
+	 * @return the layers, overlaid
+	 */
+	public static Polymetric steps(BigFraction stepSize, int... lengths) {
+		List<BoundaryQueryable> layers = new ArrayList<BoundaryQueryable>();
+		for (int length : lengths) {
+			double[] values = new double[length];
+			Arrays.fill(values, 0.5);
+			values[0] = 1.0;
+			layers.add(new Subdivision(length, stepSize.multiply(length),
+					values));
+		}
+		return new Polymetric(layers);
+	}
+
+	public List<BoundaryQueryable> getLayers() {
+		return Collections.unmodifiableList(layers);
+	}
+
+	/**
+	 * @return the sum of the layers' versions, which changes whenever one of
+	 *         theirs does, or -1 if any layer's version cannot be told
+	 */
+	@Override
+	public long getVersion() {
+		long sum = 0;
+		for (BoundaryQueryable layer : layers) {
+			if (!(layer instanceof VersionedQueryable))
+				return -1;
+			long version = ((VersionedQueryable) layer).getVersion();
+			if (version < 0)
+				return -1;
+			sum += version;
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the events of every layer overlapping the interval, ordered by
+	 * start.
+	 */
+	@Override
+	public Collection<LEvent> getForInterval(Interval interval) {
+		List<LEvent> result = new ArrayList<LEvent>();
+		for (BoundaryQueryable layer : layers) {
+			result.addAll(layer.getForInterval(interval));
+		}
+		Collections.sort(result, new Comparator<LEvent>() {
+			@Override
+			public int compare(LEvent a, LEvent b) {
+				return Ticks.compare(a.getInterval().getStart(), b
+						.getInterval().getStart());
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public BigFraction getNextBoundary(BigFraction time) {
+		BigFraction next = null;
+		for (BoundaryQueryable layer : layers) {
+			BigFraction boundary = layer.getNextBoundary(time);
+			if (boundary != null
+					&& (next == null || Ticks.compare(boundary, next) < 0))
+				next = boundary;
+		}
+		return next;
+	}
+
+	@Override
+	public String toString() {
+		return "Polymetric" + layers;
+	}
+}
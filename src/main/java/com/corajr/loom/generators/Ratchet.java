@@ -0,0 +1,62 @@
+package com.corajr.loom.generators;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * Divides each period into equal steps and repeats the hit in each step a
+ * given number of times, as on a step sequencer's ratchet setting. A step
+ * with 0 repeats is a rest. The repeats after the first in each step can be
+ * made quieter, so that a ratchet decays.
+ *
+ * @author corajr
+ */
+public class Ratchet extends StepGenerator {
+	private final int[] repeats;
+	private final double decay;
+
+	/**
+	 * Creates a ratchet lasting one cycle, whose repeats are not decayed.
+	 *
+	 * @param repeats
+	 *            the number of hits in each step
+	 */
+	public Ratchet(int... repeats) {
+		this(BigFraction.ONE, 1.0, repeats);
+	}
+
+	/**
+	 * @param period
+	 *            the length of the pattern, in cycles
+	 * @param decay
+	 *            the factor by which each repeat's value is multiplied
+	 * @param repeats
+	 *            the number of hits in each step
+	 */
+	public Ratchet(BigFraction period, double decay, int... repeats) {
+		super(period, repeats.length);
+		for (int r : repeats) {
+			if (r < 0)
+				throw new IllegalArgumentException(
+						"Repeats cannot be negative!");
+		}
+		this.repeats = repeats.clone();
+		this.decay = decay;
+	}
+
+	@Override
+	protected int hitsAt(int step) {
+		return repeats[step];
+	}
+
+	@Override
+	protected double valueAt(int step, int hit) {
+		return Math.pow(decay, hit);
+	}
+
+	@Override
+	public String toString() {
+		return "Ratchet(" + Arrays.toString(repeats) + ")";
+	}
+}
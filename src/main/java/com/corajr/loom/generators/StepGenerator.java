@@ -0,0 +1,166 @@
+package com.corajr.loom.generators;
+
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+import com.corajr.loom.BoundaryQueryable;
+import com.corajr.loom.LEvent;
+import com.corajr.loom.VersionedQueryable;
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.IntervalMath;
+
+/**
+ * Generates a rhythm that repeats forever, computing the events in each
+ * queried interval arithmetically rather than storing them.
+ *
+ * Each period is divided into a number of equal steps, and each step is
+ * either a rest or divided into one or more equal hits, which become events.
+ * Subclasses only say how many hits a step has and what their values are, so
+ * a generator takes the same small amount of memory however long it runs and
+ * a query takes time proportional to the number of steps it covers.
+ *
+ * Since the events never end, patterns using a generator do not need to be
+ * looped.
+ *
+ * @author corajr
+ */
+public abstract class StepGenerator implements BoundaryQueryable,
+		VersionedQueryable {
+	private final BigFraction period;
+	private final int steps;
+	private final BigFraction stepSize;
+
+	/**
+	 * @param period
+	 *            the length of one repetition, in cycles
+	 * @param steps
+	 *            the number of steps in each repetition
+	 */
+	protected StepGenerator(BigFraction period, int steps) {
+		if (period.compareTo(BigFraction.ZERO) <= 0)
+			throw new IllegalArgumentException("Period must be positive!");
+		if (steps < 1)
+			throw new IllegalArgumentException("Must have at least 1 step!");
+
+		this.period = period;
+		this.steps = steps;
+		this.stepSize = period.divide(steps);
+	}
+
+	/**
+	 * @param step
+	 *            a step, from 0 to <code>getSteps() - 1</code>
+	 * @return the number of events in the step (0 for a rest)
+	 */
+	protected abstract int hitsAt(int step);
+
+	/**
+	 * @param step
+	 *            a step, from 0 to <code>getSteps() - 1</code>
+	 * @param hit
+	 *            a hit within the step
+	 * @return the value of the hit's event
+	 */
+	protected double valueAt(int step, int hit) {
+		return 1.0;
+	}
+
+	public BigFraction getPeriod() {
+		return period;
+	}
+
+	public int getSteps() {
+		return steps;
+	}
+
+	public BigFraction getStepSize() {
+		return stepSize;
+	}
+
+	/**
+	 * @return the events of a single repetition, starting at 0
+	 */
+	public List<LEvent> getPeriodEvents() {
+		List<LEvent> result = new ArrayList<LEvent>();
+		for (int n = 0; n < steps; n++) {
+			addEvents(n, null, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return 0, since generators cannot be changed
+	 */
+	@Override
+	public long getVersion() {
+		return 0;
+	}
+
+	/**
+	 * Returns the events overlapping the interval (see
+	 * {@link LEvent#containedBy(Interval)}), ordered by start.
+	 */
+	@Override
+	public Collection<LEvent> getForInterval(Interval interval) {
+		List<LEvent> result = new ArrayList<LEvent>();
+
+		long first = IntervalMath.floor(interval.getStart().divide(stepSize));
+		long last = IntervalMath.floor(interval.getEnd().divide(stepSize));
+
+		for (long n = first; n <= last; n++) {
+			addEvents(n, interval, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the events of the <i>n</i>th step since time 0 that overlap the
+	 * query (or all of them, if it is null).
+	 */
+	private void addEvents(long n, Interval query, List<LEvent> result) {
+		int step = stepOf(n);
+		int hits = hitsAt(step);
+		if (hits <= 0)
+			return;
+
+		BigFraction stepStart = stepSize.multiply(n);
+		BigFraction hitSize = stepSize.divide(hits);
+		for (int hit = 0; hit < hits; hit++) {
+			BigFraction start = stepStart.add(hitSize.multiply(hit));
+			LEvent e = new LEvent(new Interval(start, start.add(hitSize)),
+					valueAt(step, hit));
+			if (query == null || e.containedBy(query))
+				result.add(e);
+		}
+	}
+
+	/**
+	 * Looks within the current step, then for the next step that is not a
+	 * rest (at most one period ahead).
+	 */
+	@Override
+	public BigFraction getNextBoundary(BigFraction time) {
+		long n = IntervalMath.floor(time.divide(stepSize));
+		BigFraction stepStart = stepSize.multiply(n);
+
+		int hits = hitsAt(stepOf(n));
+		if (hits > 0) {
+			BigFraction hitSize = stepSize.divide(hits);
+			long hit = IntervalMath.floor(time.subtract(stepStart).divide(
+					hitSize)) + 1;
+			return stepStart.add(hitSize.multiply(hit));
+		}
+
+		for (int i = 1; i <= steps; i++) {
+			if (hitsAt(stepOf(n + i)) > 0)
+				return stepSize.multiply(n + i);
+		}
+		return null;
+	}
+
+	private int stepOf(long n) {
+		long step = n % steps;
+		return (int) (step < 0 ? step + steps : step);
+	}
+}
@@ -0,0 +1,57 @@
+package com.corajr.loom.generators;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * Divides each period into equal events, taking their values in turn from a
+ * list.
+ *
+ * @author corajr
+ */
+public class Subdivision extends StepGenerator {
+	private final double[] values;
+
+	/**
+	 * Creates <code>divisions</code> events per cycle, each with value 1.0.
+	 *
+	 * @param divisions
+	 *            the number of events per cycle
+	 */
+	public Subdivision(int divisions) {
+		this(divisions, BigFraction.ONE);
+	}
+
+	public Subdivision(int divisions, BigFraction period) {
+		this(divisions, period, 1.0);
+	}
+
+	/**
+	 * @param divisions
+	 *            the number of events per period
+	 * @param period
+	 *            the length of the period, in cycles
+	 * @param values
+	 *            the values of the events, repeated as needed
+	 */
+	public Subdivision(int divisions, BigFraction period, double... values) {
+		super(period, divisions);
+		if (values.length == 0)
+			throw new IllegalArgumentException("Must have at least 1 value!");
+		this.values = values.clone();
+	}
+
+	@Override
+	protected int hitsAt(int step) {
+		return 1;
+	}
+
+	@Override
+	protected double valueAt(int step, int hit) {
+		return values[step % values.length];
+	}
+
+	@Override
+	public String toString() {
+		return "Subdivision(" + getSteps() + ")";
+	}
+}
@@ -1,5 +1,8 @@
 package com.corajr.loom.mappings;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -8,6 +11,7 @@ import javax.sound.midi.*;
 import com.corajr.loom.*;
 import com.corajr.loom.time.Interval;
 import com.corajr.loom.util.MidiTools;
+import com.corajr.loom.util.RoutedCallable;
 import com.corajr.loom.wrappers.MidiBusWrapper;
 
 /**
@@ -18,16 +22,70 @@ import com.corajr.loom.wrappers.MidiBusWrapper;
  */
 public class MidiMessageMapping implements Mapping<MidiMessage>,
 		EventMapping<Callable<Void>> {
+	private static final int MAX_SEEN = 256;
+
+	final Loom loom;
 	final MidiBusWrapper midiBusWrapper;
 	final Pattern[] patterns;
-	int lastHash = -1;
+	final AtomicInteger lastHash = new AtomicInteger(-1);
+
+	/**
+	 * The update in which each recent message was last seen, so that
+	 * simultaneous messages (such as the notes of a chord) can each be sent
+	 * once even though they alternate.
+	 */
+	final Map<Integer, Long> lastSeen = new HashMap<Integer, Long>();
 
 	public MidiMessageMapping(MidiBusWrapper midiBusWrapper,
 			final Pattern... patterns) {
+		this(null, midiBusWrapper, patterns);
+	}
+
+	/**
+	 * Creates a mapping whose messages are timestamped with the loom's target
+	 * time, so that they can be sent ahead of time when the scheduler looks
+	 * ahead.
+	 * 
+	 * @param loom
+	 *            the loom providing the target time
+	 * @param patterns
+	 *            the command, channel, data1 and (optionally) data2 patterns
+	 */
+	public MidiMessageMapping(Loom loom, final Pattern... patterns) {
+		this(loom, loom.midiBusWrapper, patterns);
+	}
+
+	private MidiMessageMapping(Loom loom, MidiBusWrapper midiBusWrapper,
+			final Pattern... patterns) {
+		this.loom = loom;
 		this.midiBusWrapper = midiBusWrapper;
 		this.patterns = patterns;
 	}
 
+	/**
+	 * Checks whether a message was already produced for the same event. With
+	 * a loom, a message counts as repeated if it was seen during this update
+	 * or the previous one (consecutive update intervals overlap); otherwise,
+	 * only if it is the same as the last message.
+	 */
+	private boolean isRepeat(int hash) {
+		if (loom == null)
+			return lastHash.getAndSet(hash) == hash;
+
+		long update = loom.getUpdateCount();
+		synchronized (lastSeen) {
+			Long previous = lastSeen.put(hash, update);
+			if (lastSeen.size() > MAX_SEEN) {
+				Iterator<Long> updates = lastSeen.values().iterator();
+				while (updates.hasNext()) {
+					if (updates.next() < update - 1)
+						updates.remove();
+				}
+			}
+			return previous != null && previous >= update - 1;
+		}
+	}
+
 	@Override
 	public MidiMessage call(double value) {
 		return null;
@@ -37,16 +95,16 @@ public class MidiMessageMapping implements Mapping<MidiMessage>,
 	public Callable<Void> call(LEvent event) {
 		Interval now = event.getInterval();
 
-		int command = patterns[0].asMidiCommand(now);
-		int channel = patterns[1].asMidiChannel(now);
-		int data1 = patterns[2].asMidiData1(now);
+		int command = patterns[0].asMidiCommand(now, event);
+		int channel = patterns[1].asMidiChannel(now, event);
+		int data1 = patterns[2].asMidiData1(now, event);
 
 		if (command < 0 || channel < 0 || data1 < 0 || command > 255
 				|| channel > 15 || data1 > 127 || event.getValue() == 0.0)
 			return null;
 
 		int data2 = patterns.length > 3 && patterns[3] != null ? patterns[3]
-				.asMidiData2(now) : 0x00;
+				.asMidiData2(now, event) : 0x00;
 
 		final ShortMessage message = new ShortMessage();
 		try {
@@ -58,17 +116,22 @@ public class MidiMessageMapping implements Mapping<MidiMessage>,
 		// ensure this is only sent once
 
 		int hash = MidiTools.hash(message) ^ now.hashCode();
-		if (hash == lastHash)
+		if (isRepeat(hash))
 			return null;
 
-		lastHash = hash;
+		final long targetMillis = loom != null ? loom.getTargetMillis() : -1;
 
-		return new Callable<Void>() {
+		return new RoutedCallable<Void>() {
 			@Override
 			public Void call() {
-				midiBusWrapper.get().sendMessage(message);
+				midiBusWrapper.get().sendMessage(message, targetMillis);
 				return null;
 			}
+
+			@Override
+			public Object getRoute() {
+				return midiBusWrapper;
+			}
 		};
 
 	}
@@ -38,11 +38,21 @@ public class MidiBusRecorder implements IMidiBus {
 		Interval currentInterval = loom.getCurrentInterval();
 		BigFraction now = currentInterval.getStart().add(
 				currentInterval.getSize().divide(2));
-		long ticks = now.multiply(loom.getPeriod()).longValue();
+		// one tick per millisecond at the default tempo of the sequence
+		long ticks = Math.round(loom.toMillis(now));
 
 		track.add(new MidiEvent(message, ticks));
 	}
 
+	/**
+	 * Records the message at the current loom time; the timestamp is ignored,
+	 * since the sequence is indexed by cycle rather than wall-clock time.
+	 */
+	@Override
+	public void sendMessage(MidiMessage message, long timestampMillis) {
+		sendMessage(message);
+	}
+
 	@Override
 	public void dispose() {
 		try {
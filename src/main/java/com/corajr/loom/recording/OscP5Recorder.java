@@ -36,6 +36,15 @@ public class OscP5Recorder extends OscP5 implements IOscP5 {
 		score.put(timestamp, bundle);
 	}
 
+	/**
+	 * Records the packet at the current loom time; the timestamp is ignored,
+	 * since the score is indexed by cycle rather than wall-clock time.
+	 */
+	@Override
+	public void send(OscPacket packet, NetAddress addr, long timestampMillis) {
+		send(packet, addr);
+	}
+
 	@Override
 	public void dispose() {
 		try {
@@ -0,0 +1,209 @@
+package com.corajr.loom.time;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.corajr.loom.util.RoutedCallable;
+import com.corajr.loom.util.StatefulCallable;
+
+/**
+ * Runs callbacks off the timing thread. Each output has its own queue, served
+ * by a dedicated thread, so that a slow sketch callback (drawing, file I/O)
+ * cannot hold up MIDI or OSC output or the evaluation of other patterns.
+ *
+ * Callables implementing {@link RoutedCallable} are queued by their route;
+ * all others share a single default queue. Callbacks on the same queue run in
+ * the order they were dispatched. A callback that takes longer than the time
+ * budget is counted and reported with {@link #overrun}.
+ *
+ * @author corajr
+ */
+public class CallbackDispatcher {
+	/**
+	 * The route used for callables that do not name one.
+	 */
+	public static final Object DEFAULT_ROUTE = "callbacks";
+
+	public static final long DEFAULT_BUDGET_MILLIS = 5;
+
+	/**
+	 * The target time of the callback running on the current thread, if any.
+	 */
+	private static final ThreadLocal<Long> dispatchedTarget = new ThreadLocal<Long>();
+
+	private final ConcurrentMap<Object, ExecutorService> queues = new ConcurrentHashMap<Object, ExecutorService>();
+	private final AtomicLong overruns = new AtomicLong();
+
+	private volatile long budgetNanos;
+	private volatile boolean shutdown = false;
+
+	public CallbackDispatcher() {
+		this(DEFAULT_BUDGET_MILLIS);
+	}
+
+	/**
+	 * @param budgetMillis
+	 *            the time a single callback may take before it is reported
+	 */
+	public CallbackDispatcher(long budgetMillis) {
+		setBudgetMillis(budgetMillis);
+	}
+
+	/**
+	 * Queues a callback to run on the thread serving its route. The state
+	 * change of a {@link StatefulCallable} happens immediately, on the calling
+	 * thread, so that onset and release detection keep the order of
+	 * evaluation; only the resulting action is queued.
+	 *
+	 * @param callback
+	 *            the callback to run
+	 * @param targetMillis
+	 *            the wall-clock time at which the callback's output is due, or
+	 *            -1 if it is due immediately
+	 */
+	public void dispatch(Callable<?> callback, long targetMillis) {
+		if (callback instanceof StatefulCallable) {
+			callback = ((StatefulCallable) callback).advance();
+		}
+		if (callback == null || shutdown)
+			return;
+
+		Object route = null;
+		if (callback instanceof RoutedCallable)
+			route = ((RoutedCallable<?>) callback).getRoute();
+		if (route == null)
+			route = DEFAULT_ROUTE;
+
+		try {
+			queueFor(route).execute(new Task(callback, route, targetMillis));
+		} catch (RejectedExecutionException e) {
+			// shut down while dispatching
+		}
+	}
+
+	private ExecutorService queueFor(final Object route) {
+		ExecutorService queue = queues.get(route);
+		if (queue != null)
+			return queue;
+
+		queue = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "loom-" + route);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		ExecutorService existing = queues.putIfAbsent(route, queue);
+		if (existing != null) {
+			queue.shutdown();
+			return existing;
+		}
+		if (shutdown)
+			queue.shutdown();
+		return queue;
+	}
+
+	private class Task implements Runnable {
+		private final Callable<?> callback;
+		private final Object route;
+		private final long targetMillis;
+
+		Task(Callable<?> callback, Object route, long targetMillis) {
+			this.callback = callback;
+			this.route = route;
+			this.targetMillis = targetMillis;
+		}
+
+		@Override
+		public void run() {
+			dispatchedTarget.set(targetMillis);
+			long start = System.nanoTime();
+			try {
+				callback.call();
+			} catch (Exception e) {
+				e.printStackTrace();
+			} finally {
+				dispatchedTarget.remove();
+			}
+
+			long elapsed = System.nanoTime() - start;
+			if (elapsed > budgetNanos) {
+				overruns.incrementAndGet();
+				overrun(route, callback, elapsed);
+			}
+		}
+	}
+
+	/**
+	 * Called on the route's thread when a callback exceeds the time budget.
+	 * By default, prints a warning to standard error.
+	 *
+	 * @param route
+	 *            the route of the callback
+	 * @param callback
+	 *            the callback that overran
+	 * @param elapsedNanos
+	 *            how long the callback took
+	 */
+	protected void overrun(Object route, Callable<?> callback,
+			long elapsedNanos) {
+		System.err.format("Loom: callback %s on %s took %.1f ms (budget %.1f ms)%n",
+				callback, route, elapsedNanos / 1e6, budgetNanos / 1e6);
+	}
+
+	/**
+	 * @return the number of callbacks that have exceeded the time budget
+	 */
+	public long getOverrunCount() {
+		return overruns.get();
+	}
+
+	public long getBudgetMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+	}
+
+	public void setBudgetMillis(long budgetMillis) {
+		if (budgetMillis < 0)
+			throw new IllegalArgumentException("Budget cannot be negative.");
+		this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+	}
+
+	/**
+	 * Stops accepting callbacks. Callbacks already queued are still run.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		for (ExecutorService queue : queues.values()) {
+			queue.shutdown();
+		}
+	}
+
+	/**
+	 * Waits for all queued callbacks to finish after {@link #shutdown()}.
+	 *
+	 * @param timeoutMillis
+	 *            the maximum time to wait for each queue
+	 * @return true if every queue finished
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeoutMillis)
+			throws InterruptedException {
+		boolean finished = true;
+		for (ExecutorService queue : queues.values()) {
+			finished &= queue.awaitTermination(timeoutMillis,
+					TimeUnit.MILLISECONDS);
+		}
+		return finished;
+	}
+
+	/**
+	 * @return the target time of the callback running on this thread, or null
+	 *         if this is not a dispatcher thread
+	 */
+	static Long getDispatchedTarget() {
+		return dispatchedTarget.get();
+	}
+}
@@ -0,0 +1,94 @@
+package com.corajr.loom.time;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A monotonic clock based on <code>System.nanoTime()</code>, used by the
+ * {@link RealTimeScheduler} to measure time and to wait for deadlines.
+ *
+ * Unlike <code>System.currentTimeMillis()</code>, this clock never jumps when
+ * the system time is adjusted. Waiting parks the thread until shortly before
+ * the deadline and then spins for the remainder, since the granularity of
+ * parking (and sleeping) is up to the operating system.
+ *
+ * @author corajr
+ */
+public class Clock {
+	public static final long NANOS_PER_MILLI = 1000000L;
+
+	/**
+	 * By default, spin for the last 200 microseconds before a deadline.
+	 */
+	public static final long DEFAULT_SPIN_NANOS = 200000L;
+
+	private final long originNanos;
+	private final long originMillis;
+	private final long spinNanos;
+
+	public Clock() {
+		this(DEFAULT_SPIN_NANOS);
+	}
+
+	/**
+	 * @param spinNanos
+	 *            how long before each deadline to stop parking and start
+	 *            spinning
+	 */
+	public Clock(long spinNanos) {
+		if (spinNanos < 0)
+			throw new IllegalArgumentException(
+					"Spin time cannot be negative.");
+		this.spinNanos = spinNanos;
+		this.originNanos = System.nanoTime();
+		this.originMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the current value of the clock in nanoseconds, with an
+	 *         arbitrary origin
+	 */
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Converts a reading of this clock into wall-clock time, as in
+	 * <code>System.currentTimeMillis()</code> when the clock was created. Later
+	 * adjustments to the system time do not affect the result.
+	 *
+	 * @param nanos
+	 *            a value returned by {@link #nanoTime()}
+	 * @return the equivalent wall-clock time in milliseconds
+	 */
+	public long toMillis(long nanos) {
+		return originMillis
+				+ TimeUnit.NANOSECONDS.toMillis(nanos - originNanos);
+	}
+
+	/**
+	 * Blocks until the clock reaches the deadline.
+	 *
+	 * @param deadlineNanos
+	 *            the time to wait for, in terms of {@link #nanoTime()}
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public void waitUntil(long deadlineNanos) throws InterruptedException {
+		while (true) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+
+			long remaining = deadlineNanos - nanoTime();
+			if (remaining <= 0)
+				return;
+
+			if (remaining > spinNanos)
+				LockSupport.parkNanos(this, remaining - spinNanos);
+		}
+	}
+
+	public long getSpinNanos() {
+		return spinNanos;
+	}
+}
@@ -1,10 +1,21 @@
 package com.corajr.loom.time;
 
+import java.math.BigInteger;
+
 import org.apache.commons.math3.fraction.BigFraction;
 
 public class Interval {
-	private final BigFraction start;
-	private final BigFraction end;
+	private BigFraction start;
+	private BigFraction end;
+
+	/**
+	 * When <code>tickExact</code> is true, the start and end are also held as
+	 * {@link Ticks}, and arithmetic and comparisons are done on these longs.
+	 * The BigFraction fields are then only materialized on demand.
+	 */
+	private final long startTicks;
+	private final long endTicks;
+	private final boolean tickExact;
 
 	public Interval(double start, double end) {
 		this(IntervalMath.toFraction(start), IntervalMath.toFraction(end));
@@ -20,10 +31,42 @@ public class Interval {
 	 *            the end of the interval
 	 */
 	public Interval(BigFraction start, BigFraction end) {
-		if (end.compareTo(start) <= 0)
-			throw new IllegalArgumentException("Must end after start!");
 		this.start = start;
 		this.end = end;
+		if (Ticks.isExact(start) && Ticks.isExact(end)) {
+			this.startTicks = Ticks.fromFraction(start);
+			this.endTicks = Ticks.fromFraction(end);
+			this.tickExact = true;
+			if (endTicks <= startTicks)
+				throw new IllegalArgumentException("Must end after start!");
+		} else {
+			this.startTicks = 0;
+			this.endTicks = 0;
+			this.tickExact = false;
+			if (end.compareTo(start) <= 0)
+				throw new IllegalArgumentException("Must end after start!");
+		}
+	}
+
+	private Interval(long startTicks, long endTicks) {
+		if (endTicks <= startTicks)
+			throw new IllegalArgumentException("Must end after start!");
+		this.startTicks = startTicks;
+		this.endTicks = endTicks;
+		this.tickExact = true;
+	}
+
+	/**
+	 * Creates a new Interval from a start and end measured in {@link Ticks}.
+	 * 
+	 * @param startTicks
+	 *            the beginning of the interval
+	 * @param endTicks
+	 *            the end of the interval
+	 * @return a new interval
+	 */
+	public static Interval fromTicks(long startTicks, long endTicks) {
+		return new Interval(startTicks, endTicks);
 	}
 
 	/**
@@ -49,27 +92,102 @@ public class Interval {
 	}
 
 	public BigFraction getStart() {
+		if (start == null)
+			start = Ticks.toFraction(startTicks);
 		return start;
 	}
 
 	public BigFraction getEnd() {
+		if (end == null)
+			end = Ticks.toFraction(endTicks);
 		return end;
 	}
 
+	/**
+	 * @return the start in cycles, as a (possibly inexact) double; tick-exact
+	 *         intervals are converted without creating fractions
+	 */
+	public double getStartDouble() {
+		return tickExact ? Ticks.toDouble(startTicks) : start.doubleValue();
+	}
+
+	/**
+	 * @return the end in cycles, as a (possibly inexact) double
+	 * @see #getStartDouble()
+	 */
+	public double getEndDouble() {
+		return tickExact ? Ticks.toDouble(endTicks) : end.doubleValue();
+	}
+
 	public BigFraction getSize() {
+		if (tickExact)
+			return Ticks.toFraction(endTicks - startTicks);
 		return end.subtract(start);
 	}
 
+	/**
+	 * @return true if this interval's endpoints are exactly representable as
+	 *         {@link Ticks}
+	 */
+	public boolean isTickExact() {
+		return tickExact;
+	}
+
+	/**
+	 * @return the start in {@link Ticks}; only meaningful if
+	 *         {@link #isTickExact()}
+	 */
+	public long getStartTicks() {
+		return startTicks;
+	}
+
+	/**
+	 * @return the end in {@link Ticks}; only meaningful if
+	 *         {@link #isTickExact()}
+	 */
+	public long getEndTicks() {
+		return endTicks;
+	}
+
 	public Interval add(BigFraction fraction) {
-		return new Interval(start.add(fraction), end.add(fraction));
+		if (tickExact && Ticks.isExact(fraction)) {
+			long offset = Ticks.fromFraction(fraction);
+			if (Ticks.canAdd(startTicks, offset)
+					&& Ticks.canAdd(endTicks, offset))
+				return new Interval(startTicks + offset, endTicks + offset);
+		}
+		return new Interval(getStart().add(fraction), getEnd().add(fraction));
 	}
 
 	public Interval subtract(BigFraction fraction) {
-		return new Interval(start.subtract(fraction), end.subtract(fraction));
+		if (tickExact && Ticks.isExact(fraction)) {
+			long offset = -Ticks.fromFraction(fraction);
+			if (Ticks.canAdd(startTicks, offset)
+					&& Ticks.canAdd(endTicks, offset))
+				return new Interval(startTicks + offset, endTicks + offset);
+		}
+		return new Interval(getStart().subtract(fraction), getEnd().subtract(
+				fraction));
 	}
 
 	public Interval multiply(BigFraction fraction) {
-		return new Interval(start.multiply(fraction), end.multiply(fraction));
+		if (tickExact) {
+			BigInteger num = fraction.getNumerator();
+			BigInteger den = fraction.getDenominator();
+			if (num.bitLength() < 32 && den.bitLength() < 32) {
+				long n = num.longValue();
+				long d = den.longValue();
+				if (Ticks.canMultiply(startTicks, n)
+						&& Ticks.canMultiply(endTicks, n)) {
+					long newStart = startTicks * n;
+					long newEnd = endTicks * n;
+					if (newStart % d == 0 && newEnd % d == 0)
+						return new Interval(newStart / d, newEnd / d);
+				}
+			}
+		}
+		return new Interval(getStart().multiply(fraction), getEnd().multiply(
+				fraction));
 	}
 
 	public Interval add(double i) {
@@ -96,6 +214,13 @@ public class Interval {
 	 * @return the fraction mod [start, end]
 	 */
 	private static BigFraction fractionMod(BigFraction x, Interval interval) {
+		if (interval.tickExact && Ticks.isExact(x)) {
+			long a = interval.startTicks;
+			long length = interval.endTicks - a;
+			long ticks = Ticks.fromFraction(x);
+			return Ticks.toFraction(ticks
+					- IntervalMath.floorDiv(ticks - a, length) * length);
+		}
 
 		BigFraction a = interval.getStart();
 		BigFraction b = interval.getEnd();
@@ -103,8 +228,7 @@ public class Interval {
 		BigFraction x_minus_a = x.subtract(a);
 		BigFraction length = b.subtract(a);
 
-		int multiplier = (int) Math.floor((x_minus_a.divide(length))
-				.doubleValue());
+		long multiplier = IntervalMath.floor(x_minus_a.divide(length));
 
 		return x.subtract(length.multiply(multiplier));
 	}
@@ -121,20 +245,42 @@ public class Interval {
 	 */
 	public Interval modulo(Interval other) throws IllegalArgumentException {
 
+		if (tickExact && other.tickExact) {
+			long otherSize = other.endTicks - other.startTicks;
+			if (endTicks - startTicks > otherSize)
+				throw new IllegalArgumentException(
+						"This interval is larger than modulo interval; will be aliased!");
+
+			// shift up until the start is inside, then down until the end is
+			long shift = 0;
+			if (startTicks < other.startTicks)
+				shift = IntervalMath.ceilDiv(other.startTicks - startTicks,
+						otherSize);
+
+			long e = endTicks + shift * otherSize;
+			if (e > other.endTicks)
+				shift -= IntervalMath.ceilDiv(e - other.endTicks, otherSize);
+
+			return shift == 0 ? this : new Interval(startTicks + shift
+					* otherSize, endTicks + shift * otherSize);
+		}
+
 		BigFraction otherSize = other.getSize();
 		if (this.getSize().compareTo(otherSize) > 0)
 			throw new IllegalArgumentException(
 					"This interval is larger than modulo interval; will be aliased!");
 
-		Interval i = this;
-
-		while (i.getStart().compareTo(other.getStart()) < 0)
-			i = i.add(otherSize);
+		long shift = 0;
+		if (getStart().compareTo(other.getStart()) < 0)
+			shift = IntervalMath.ceil(other.getStart().subtract(getStart())
+					.divide(otherSize));
 
-		while (i.getEnd().compareTo(other.getEnd()) > 0)
-			i = i.subtract(otherSize);
+		BigFraction e = getEnd().add(otherSize.multiply(shift));
+		if (e.compareTo(other.getEnd()) > 0)
+			shift -= IntervalMath.ceil(e.subtract(other.getEnd()).divide(
+					otherSize));
 
-		return i;
+		return shift == 0 ? this : add(otherSize.multiply(shift));
 	}
 
 	/**
@@ -225,10 +371,14 @@ public class Interval {
 
 	@Override
 	public int hashCode() {
+		if (tickExact) {
+			return 31 * (int) (endTicks ^ (endTicks >>> 32))
+					+ (int) (startTicks ^ (startTicks >>> 32));
+		}
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((end == null) ? 0 : end.hashCode());
-		result = prime * result + ((start == null) ? 0 : start.hashCode());
+		result = prime * result + end.hashCode();
+		result = prime * result + start.hashCode();
 		return result;
 	}
 
@@ -241,22 +391,19 @@ public class Interval {
 		if (!(obj instanceof Interval))
 			return false;
 		Interval other = (Interval) obj;
-		if (end == null) {
-			if (other.end != null)
-				return false;
-		} else if (!end.equals(other.end))
-			return false;
-		if (start == null) {
-			if (other.start != null)
-				return false;
-		} else if (!start.equals(other.start))
+		// Ticks.isExact accepts exactly the fractions that some long number
+		// of ticks represents, so equal intervals are always equally exact
+		if (tickExact != other.tickExact)
 			return false;
-		return true;
+		if (tickExact)
+			return startTicks == other.startTicks && endTicks == other.endTicks;
+		return start.equals(other.start) && end.equals(other.end);
 	}
 
 	@Override
 	public String toString() {
-		String s = "[" + start.toString() + "," + end.toString() + "]";
+		String s = "[" + getStart().toString() + "," + getEnd().toString()
+				+ "]";
 		return s.replaceAll(" ", "");
 	}
 }
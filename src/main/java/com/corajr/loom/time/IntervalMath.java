@@ -1,5 +1,7 @@
 package com.corajr.loom.time;
 
+import java.math.BigInteger;
+
 import org.apache.commons.math3.fraction.BigFraction;
 
 public class IntervalMath {
@@ -28,4 +30,52 @@ public class IntervalMath {
 	public static BigFraction toFraction(double value) {
 		return new BigFraction(value, EPSILON, 100);
 	}
+
+	/**
+	 * @param value
+	 *            a fraction
+	 * @return the largest integer less than or equal to the fraction
+	 */
+	public static long floor(BigFraction value) {
+		BigInteger[] qr = value.getNumerator().divideAndRemainder(
+				value.getDenominator());
+		long q = qr[0].longValue();
+		return qr[1].signum() < 0 ? q - 1 : q;
+	}
+
+	/**
+	 * @param value
+	 *            a fraction
+	 * @return the smallest integer greater than or equal to the fraction
+	 */
+	public static long ceil(BigFraction value) {
+		BigInteger[] qr = value.getNumerator().divideAndRemainder(
+				value.getDenominator());
+		long q = qr[0].longValue();
+		return qr[1].signum() > 0 ? q + 1 : q;
+	}
+
+	/**
+	 * @param a
+	 *            the dividend
+	 * @param b
+	 *            the divisor, which must be positive
+	 * @return the largest integer less than or equal to <code>a / b</code>
+	 */
+	public static long floorDiv(long a, long b) {
+		long q = a / b;
+		return (a % b < 0) ? q - 1 : q;
+	}
+
+	/**
+	 * @param a
+	 *            the dividend
+	 * @param b
+	 *            the divisor, which must be positive
+	 * @return the smallest integer greater than or equal to <code>a / b</code>
+	 */
+	public static long ceilDiv(long a, long b) {
+		long q = a / b;
+		return (a % b > 0) ? q + 1 : q;
+	}
 }
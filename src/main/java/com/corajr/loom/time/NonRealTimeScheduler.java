@@ -8,6 +8,8 @@ package com.corajr.loom.time;
  */
 public class NonRealTimeScheduler extends Scheduler {
 
+	private boolean fastForward = true;
+
 	// NonRealTimeScheduler only progresses when explicitly updated via
 	// <code>setElapsedMillis</code>.
 	@Override
@@ -16,14 +18,21 @@ public class NonRealTimeScheduler extends Scheduler {
 	}
 
 	/**
-	 * Jump to a new time.
+	 * Jump to a new time. Unless fast-forwarding is disabled, milliseconds in
+	 * which no pattern's callbacks could change are skipped rather than
+	 * evaluated one by one.
 	 * 
 	 * @param elapsedMillis
 	 */
 	public void setElapsedMillis(long elapsedMillis) {
 		if (this.elapsedMillis < elapsedMillis) {
+			// the starting point may not have been evaluated, so always step
+			// once before skipping ahead
+			this.elapsedMillis++;
+			update();
+
 			while (this.elapsedMillis < elapsedMillis) {
-				this.elapsedMillis++;
+				this.elapsedMillis = getNextUpdate(elapsedMillis);
 				update();
 			}
 		} else {
@@ -31,6 +40,39 @@ public class NonRealTimeScheduler extends Scheduler {
 		}
 	}
 
+	/**
+	 * Finds the first millisecond at which the callbacks could change.
+	 * 
+	 * @param goal
+	 *            the time being advanced to
+	 * @return the next millisecond to evaluate, no later than goal
+	 */
+	private long getNextUpdate(long goal) {
+		if (!fastForward)
+			return elapsedMillis + 1;
+
+		long untilMillis = getMillisUntilNextBoundary(false);
+		if (untilMillis >= goal - elapsedMillis)
+			return goal;
+
+		return elapsedMillis + untilMillis;
+	}
+
+	/**
+	 * Enables or disables skipping over milliseconds in which nothing
+	 * happens. It is enabled by default.
+	 * 
+	 * @param fastForward
+	 *            whether to skip ahead to the next event boundary
+	 */
+	public void setFastForward(boolean fastForward) {
+		this.fastForward = fastForward;
+	}
+
+	public boolean isFastForward() {
+		return fastForward;
+	}
+
 	@Override
 	public long getElapsedMillis() {
 		return elapsedMillis;
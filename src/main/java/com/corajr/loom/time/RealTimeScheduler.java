@@ -1,6 +1,7 @@
 package com.corajr.loom.time;
 
-import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+import org.apache.commons.math3.stat.descriptive.SynchronizedSummaryStatistics;
 
 /**
  * @author corajr
@@ -12,30 +13,55 @@ public class RealTimeScheduler extends Scheduler {
 	class Timer implements Runnable {
 		@Override
 		public void run() {
+			long startNanos;
 			if (state == State.PAUSED) {
 				// resume counting where we left off
-				startMillis = System.currentTimeMillis() - elapsedMillis;
+				startNanos = clock.nanoTime() - (elapsedMillis - lookaheadMillis)
+						* Clock.NANOS_PER_MILLI;
 			} else {
-				startMillis = System.currentTimeMillis();
+				startNanos = clock.nanoTime();
 			}
+			startMillis = clock.toMillis(startNanos);
 
-			int waitInNanos = (int) (periodMillis
-					* getMinimumResolution().doubleValue() * 500000);
-			if (waitInNanos > 999999)
-				waitInNanos = 500000;
-
-			BigFraction lastUpdated = getNow().subtract(getHalfMinimum());
-			BigFraction nowFrac;
+			Interval lastInterval = null;
+			long nextUpdate = 0;
 			while (true) {
 				try {
-					elapsedMillis = System.currentTimeMillis() - startMillis;
-
-					nowFrac = getNow().add(getHalfMinimum());
-					updateFor(new Interval(lastUpdated, nowFrac));
+					long realElapsed = (clock.nanoTime() - startNanos)
+							/ Clock.NANOS_PER_MILLI;
+					long lookahead = lookaheadMillis;
 
-					lastUpdated = nowFrac;
+					if (lookahead <= 0) {
+						targetMillis = -1;
+						// after lookahead is turned off, wait for real time to
+						// catch up with what has already been evaluated
+						if (lastInterval == null || realElapsed >= nextUpdate) {
+							elapsedMillis = realElapsed;
+							lastInterval = updateSince(lastInterval);
+							nextUpdate = getNextUpdate();
+						}
+					} else {
+						// evaluate each update up to the horizon, tagging its
+						// output with the time at which it is due
+						long horizon = realElapsed + lookahead;
+						if (lastInterval == null)
+							nextUpdate = realElapsed;
+						while (nextUpdate <= horizon) {
+							elapsedMillis = nextUpdate;
+							targetMillis = startMillis + elapsedMillis;
+							lastInterval = updateSince(lastInterval);
+							nextUpdate = getNextUpdate();
+						}
+					}
 
-					Thread.sleep(0, waitInNanos);
+					// deadlines are measured from the start, so that lateness
+					// in one tick does not accumulate; if evaluation overran,
+					// the deadline has passed and the next tick resynchronizes
+					long deadline = startNanos
+							+ Math.max(realElapsed + 1, nextUpdate - lookahead)
+							* Clock.NANOS_PER_MILLI;
+					clock.waitUntil(deadline);
+					jitter.addValue(clock.nanoTime() - deadline);
 				} catch (InterruptedException e) {
 					break;
 				} catch (Exception e) {
@@ -45,16 +71,187 @@ public class RealTimeScheduler extends Scheduler {
 
 			}
 		}
+
+		/**
+		 * Finds the next millisecond to evaluate. Unless event-driven, this is
+		 * always the next one.
+		 */
+		private long getNextUpdate() {
+			if (!eventDriven)
+				return elapsedMillis + 1;
+
+			long step = getMillisUntilNextBoundary(true);
+			if (step > maxSleepMillis)
+				step = maxSleepMillis;
+			if (step > pollMillis && hasContinuousActiveMappings())
+				step = pollMillis;
+			return elapsedMillis + step;
+		}
+
+		/**
+		 * Runs callbacks for the time since the last update.
+		 * 
+		 * @return the interval just evaluated
+		 */
+		private Interval updateSince(Interval lastInterval) {
+			Interval current = getCurrentInterval();
+			if (lastInterval == null)
+				updateFor(current);
+			else if (!current.equals(lastInterval))
+				updateFor(span(lastInterval, current));
+			return current;
+		}
+	}
+
+	/**
+	 * How far ahead of the wall clock patterns are evaluated, in milliseconds.
+	 */
+	private volatile long lookaheadMillis = 0;
+
+	private volatile boolean eventDriven = false;
+
+	/**
+	 * How often continuous patterns are evaluated when event-driven.
+	 */
+	private volatile long pollMillis = 10;
+
+	/**
+	 * The longest the timing thread sleeps when event-driven, so that newly
+	 * added patterns are noticed.
+	 */
+	private volatile long maxSleepMillis = 100;
+
+	private final Clock clock;
+
+	/**
+	 * How late the timing thread wakes up for each tick, in nanoseconds.
+	 */
+	private final SynchronizedSummaryStatistics jitter = new SynchronizedSummaryStatistics();
+
+	/**
+	 * Joins the end of the previous interval to the end of the current one.
+	 */
+	private static Interval span(Interval previous, Interval current) {
+		if (previous.isTickExact() && current.isTickExact())
+			return Interval.fromTicks(previous.getEndTicks(),
+					current.getEndTicks());
+		return new Interval(previous.getEnd(), current.getEnd());
 	}
 
 	private final Timer timer;
 	private final Thread timingThread;
 
 	public RealTimeScheduler() {
+		this(new Clock());
+	}
+
+	/**
+	 * @param clock
+	 *            the clock used to measure time and wait for each tick
+	 */
+	public RealTimeScheduler(Clock clock) {
+		this.clock = clock;
 		timer = new Timer();
 		timingThread = new Thread(timer);
 	}
 
+	/**
+	 * Sets how far ahead of real time patterns are evaluated. With a lookahead
+	 * of 50-100 ms, messages are sent early along with the time at which they
+	 * are due (see {@link #getTargetMillis()}), so that their timing depends on
+	 * the output device rather than on this thread waking up promptly.
+	 * 
+	 * While looking ahead, {@link #getNow()} reports the time being evaluated,
+	 * which runs ahead of the wall clock by up to the lookahead.
+	 * 
+	 * @param lookaheadMillis
+	 *            the lookahead in milliseconds (0 to disable)
+	 */
+	public void setLookahead(long lookaheadMillis) {
+		if (lookaheadMillis < 0)
+			throw new IllegalArgumentException("Lookahead cannot be negative.");
+		this.lookaheadMillis = lookaheadMillis;
+	}
+
+	public long getLookahead() {
+		return lookaheadMillis;
+	}
+
+	/**
+	 * Enables or disables event-driven wakeups. When enabled, the timing
+	 * thread sleeps until the next event boundary of any active pattern
+	 * instead of waking every millisecond. Patterns that must be evaluated
+	 * continuously (continuous functions, plain callables) are polled every
+	 * {@link #setPollMillis(long) poll interval} instead, and the thread
+	 * wakes at least every {@link #setMaxSleepMillis(long) max sleep
+	 * interval} to pick up changes to the patterns.
+	 * 
+	 * @param eventDriven
+	 *            whether to sleep until the next event boundary
+	 */
+	public void setEventDriven(boolean eventDriven) {
+		this.eventDriven = eventDriven;
+	}
+
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+
+	/**
+	 * Sets how often continuous patterns are evaluated in event-driven mode.
+	 * 
+	 * @param pollMillis
+	 *            the polling interval in milliseconds
+	 */
+	public void setPollMillis(long pollMillis) {
+		if (pollMillis < 1)
+			throw new IllegalArgumentException(
+					"Polling interval must be at least 1 ms.");
+		this.pollMillis = pollMillis;
+	}
+
+	public long getPollMillis() {
+		return pollMillis;
+	}
+
+	/**
+	 * Sets the longest the timing thread will sleep in event-driven mode.
+	 * Patterns added or remapped while it sleeps may be delayed by up to this
+	 * long.
+	 * 
+	 * @param maxSleepMillis
+	 *            the maximum sleep in milliseconds
+	 */
+	public void setMaxSleepMillis(long maxSleepMillis) {
+		if (maxSleepMillis < 1)
+			throw new IllegalArgumentException(
+					"Maximum sleep must be at least 1 ms.");
+		this.maxSleepMillis = maxSleepMillis;
+	}
+
+	public long getMaxSleepMillis() {
+		return maxSleepMillis;
+	}
+
+	/**
+	 * Returns statistics on how late the timing thread woke up for each tick
+	 * since playback began (or since {@link #resetJitterStatistics()}), in
+	 * nanoseconds.
+	 * 
+	 * @return a snapshot of the jitter statistics
+	 */
+	public StatisticalSummary getJitterStatistics() {
+		return jitter.getSummary();
+	}
+
+	public void resetJitterStatistics() {
+		jitter.clear();
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
 	@Override
 	public long getElapsedMillis() {
 		return elapsedMillis;
@@ -2,6 +2,7 @@ package com.corajr.loom.time;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.math3.fraction.BigFraction;
 
@@ -34,12 +35,13 @@ public abstract class Scheduler {
 	 */
 	long elapsedMillis = -1;
 
+	State state = State.STOPPED;
+
 	/**
-	 * period of a complete cycle in milliseconds
+	 * Wall-clock time at which the interval being evaluated is due, or -1 if
+	 * it is due immediately.
 	 */
-	long periodMillis = 1000;
-
-	State state = State.STOPPED;
+	long targetMillis = -1;
 
 	/**
 	 * One millisecond at standard playback speed.
@@ -48,7 +50,22 @@ public abstract class Scheduler {
 	public static final BigFraction DEFAULT_RESOLUTION = new BigFraction(1,
 			1000);
 
-	private BigFraction minimumResolution = DEFAULT_RESOLUTION;
+	/**
+	 * Pool used to evaluate top-level patterns in parallel (null if serial).
+	 */
+	private volatile ForkJoinPool pool = null;
+
+	/**
+	 * Runs callbacks off the timing thread (null to run them inline).
+	 */
+	private volatile CallbackDispatcher dispatcher = null;
+
+	/**
+	 * Converts elapsed time into cycles; the period defaults to one second.
+	 */
+	private final TempoMap tempoMap = new TempoMap(1000);
+
+	private final AtomicLong updateCount = new AtomicLong();
 
 	/**
 	 * Implementations of the Scheduler class must provide the present time when
@@ -64,14 +81,16 @@ public abstract class Scheduler {
 	 * @return the present moment as a fraction of a cycle
 	 */
 	public BigFraction getNow() {
+		checkNotStopped();
+
+		return tempoMap.toCycles(getElapsedMillis());
+	}
+
+	private void checkNotStopped() {
 		if (state == State.STOPPED)
 			throw new IllegalStateException(
 					"Tried to retrieve the time while stopped! "
 							+ "Please call loom.play() or loom.record().");
-
-		long elapsed = getElapsedMillis();
-
-		return new BigFraction(elapsed, periodMillis);
 	}
 
 	/**
@@ -81,9 +100,20 @@ public abstract class Scheduler {
 	 * @return an interval
 	 */
 	public Interval getCurrentInterval() {
-		BigFraction now = getNow();
-		return new Interval(now.subtract(getHalfMinimum()),
-				now.add(getHalfMinimum()));
+		checkNotStopped();
+
+		long elapsed = getElapsedMillis();
+		TempoMap.Segment segment = tempoMap.segmentAt(elapsed);
+
+		if (segment.isExact() && !segment.tickExact) {
+			BigFraction now = segment.cyclesAt(elapsed);
+			BigFraction half = segment.halfResolution;
+			return new Interval(now.subtract(half), now.add(half));
+		}
+
+		long nowTicks = segment.ticksAt(elapsed);
+		long halfTicks = segment.halfTicksAt(elapsed);
+		return Interval.fromTicks(nowTicks - halfTicks, nowTicks + halfTicks);
 	}
 
 	/**
@@ -108,27 +138,88 @@ public abstract class Scheduler {
 		state = State.STOPPED;
 	}
 
+	/**
+	 * Returns the wall-clock time (as in System.currentTimeMillis()) at which
+	 * the events currently being evaluated should be heard. Outputs that
+	 * support timestamps use this to schedule messages evaluated ahead of
+	 * time.
+	 * 
+	 * @return the target time in milliseconds, or -1 to send immediately
+	 */
+	public long getTargetMillis() {
+		Long dispatched = CallbackDispatcher.getDispatchedTarget();
+		return dispatched != null ? dispatched : targetMillis;
+	}
+
+	/**
+	 * Counts the updates run so far. Mappings use this to recognize an event
+	 * that is seen again because consecutive update intervals overlap.
+	 * 
+	 * @return the number of calls to {@link #updateFor(Interval)}
+	 */
+	public long getUpdateCount() {
+		return updateCount.get();
+	}
+
+	/**
+	 * @return the period currently in effect, in milliseconds
+	 */
 	public long getPeriod() {
-		return periodMillis;
+		return tempoMap.getPeriodAt(Math.max(elapsedMillis, 0));
 	}
 
+	/**
+	 * Returns the tempo map, which can be used to schedule changes of period
+	 * at given positions.
+	 * 
+	 * @return the scheduler's tempo map
+	 */
+	public TempoMap getTempoMap() {
+		return tempoMap;
+	}
+
+	/**
+	 * Converts a position in cycles into the number of milliseconds after
+	 * playback began at which it is (or was) reached, according to the tempo
+	 * map.
+	 * 
+	 * @param cycles
+	 *            the position in cycles
+	 * @return the elapsed time in milliseconds
+	 */
+	public double toMillis(BigFraction cycles) {
+		return tempoMap.toMillis(cycles);
+	}
+
+	/**
+	 * @return one millisecond in cycles at the current tempo (or, during a
+	 *         tempo ramp, at the fastest tempo of the ramp)
+	 */
 	public BigFraction getMinimumResolution() {
-		return minimumResolution;
+		return tempoMap.segmentAt(Math.max(elapsedMillis, 0)).resolution;
 	}
 
 	public BigFraction getHalfMinimum() {
-		return minimumResolution.divide(2);
+		return tempoMap.segmentAt(Math.max(elapsedMillis, 0)).halfResolution;
 	}
 
 	/**
-	 * Sets the period of the scheduler.
+	 * Sets the period of the scheduler. During playback, the change takes
+	 * effect from the current position onward, so that the position does not
+	 * jump (see {@link TempoMap#setPeriodFrom(long, long)}); before playback,
+	 * it changes the initial period (see
+	 * {@link TempoMap#setInitialPeriod(long)}). Either way, the changes
+	 * scheduled in the tempo map after that position are kept, at the same
+	 * positions.
 	 * 
 	 * @param periodMillis
 	 *            the new period
 	 */
 	public void setPeriod(long periodMillis) {
-		this.periodMillis = periodMillis;
-		this.minimumResolution = new BigFraction(1, periodMillis);
+		if (elapsedMillis > 0)
+			tempoMap.setPeriodFrom(elapsedMillis, periodMillis);
+		else
+			tempoMap.setInitialPeriod(periodMillis);
 	}
 
 	/**
@@ -143,25 +234,224 @@ public abstract class Scheduler {
 	 * events, the callback for each event will be called individually. For a
 	 * continuous pattern, only one callback will be called.
 	 * 
+	 * In parallel mode (see {@link #setParallelism(int)}), all patterns are
+	 * evaluated first and the callbacks are then run on this thread in the
+	 * same order as in serial mode.
+	 * 
+	 * If a {@link CallbackDispatcher} is set, the callbacks are queued to it
+	 * instead of being run on this thread.
+	 * 
 	 * @param interval
 	 *            the interval over which to run callbacks
 	 */
 	public void updateFor(Interval interval) {
+		updateCount.incrementAndGet();
 		PatternCollection actives = getPatternsWithActiveMappings();
-		for (Pattern pattern : actives) {
-			Collection<Callable<?>> callbacks = pattern
-					.getActiveMappingsFor(interval);
-			for (Callable<?> callback : callbacks) {
-				if (callback != null)
-					try {
-						callback.call();
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
+		ForkJoinPool pool = this.pool;
+
+		if (pool == null || actives.size() < 2) {
+			for (Pattern pattern : actives) {
+				runCallbacks(pattern.getActiveMappingsFor(interval));
+			}
+			return;
+		}
+
+		Pattern[] patterns = actives.toArray(new Pattern[actives.size()]);
+		List<Collection<Callable<?>>> results = new ArrayList<Collection<Callable<?>>>(
+				Collections.<Collection<Callable<?>>> nCopies(patterns.length,
+						null));
+		int grain = Math.max(1, patterns.length / (pool.getParallelism() * 4));
+
+		pool.invoke(new Evaluation(patterns, interval, results, 0,
+				patterns.length, grain));
+
+		for (Collection<Callable<?>> callbacks : results) {
+			runCallbacks(callbacks);
+		}
+	}
+
+	private void runCallbacks(Collection<Callable<?>> callbacks) {
+		CallbackDispatcher dispatcher = this.dispatcher;
+		for (Callable<?> callback : callbacks) {
+			if (callback == null)
+				continue;
+			if (dispatcher != null)
+				dispatcher.dispatch(callback, targetMillis);
+			else
+				try {
+					callback.call();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+		}
+	}
+
+	/**
+	 * Collects the callbacks of a range of patterns, splitting the range in
+	 * half until it is no larger than the grain size.
+	 */
+	private static class Evaluation extends RecursiveAction {
+		private static final long serialVersionUID = -2716302981623544176L;
+
+		private final Pattern[] patterns;
+		private final Interval interval;
+		private final List<Collection<Callable<?>>> results;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		Evaluation(Pattern[] patterns, Interval interval,
+				List<Collection<Callable<?>>> results, int from, int to,
+				int grain) {
+			this.patterns = patterns;
+			this.interval = interval;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				for (int i = from; i < to; i++) {
+					results.set(i, patterns[i].getActiveMappingsFor(interval));
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Evaluation(patterns, interval, results, from,
+						mid, grain), new Evaluation(patterns, interval,
+						results, mid, to, grain));
 			}
 		}
 	}
 
+	/**
+	 * Sets the number of threads used to evaluate top-level patterns. With a
+	 * parallelism of 1 (the default) patterns are evaluated serially on the
+	 * timing thread, each pattern's callbacks running before the next pattern
+	 * is evaluated.
+	 * 
+	 * @param parallelism
+	 *            the number of threads to use
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException(
+					"Parallelism must be at least 1.");
+
+		ForkJoinPool old = pool;
+		pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		if (old != null)
+			old.shutdown();
+	}
+
+	public int getParallelism() {
+		ForkJoinPool pool = this.pool;
+		return pool != null ? pool.getParallelism() : 1;
+	}
+
+	/**
+	 * Sets the dispatcher used to run callbacks off the timing thread. Slow
+	 * callbacks then delay only the callbacks queued behind them, rather than
+	 * the timing of every pattern. With no dispatcher (the default), callbacks
+	 * run on the timing thread as soon as they are evaluated.
+	 * 
+	 * @param dispatcher
+	 *            the dispatcher, or null to run callbacks inline
+	 */
+	public void setDispatcher(CallbackDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	public CallbackDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * Shuts down the threads used to evaluate patterns in parallel and to run
+	 * callbacks. Patterns are evaluated serially afterward.
+	 */
+	public void dispose() {
+		setParallelism(1);
+		CallbackDispatcher dispatcher = this.dispatcher;
+		if (dispatcher != null)
+			dispatcher.shutdown();
+	}
+
+	/**
+	 * Finds how long it will be before any active pattern's callbacks could
+	 * change, starting from the given interval.
+	 * 
+	 * @param interval
+	 *            the interval most recently evaluated
+	 * @return the time in cycles until the next event boundary, zero if some
+	 *         pattern must be evaluated continuously, or null if nothing will
+	 *         change
+	 * @see Pattern#getTimeUntilNextBoundary(Interval)
+	 */
+	public BigFraction getTimeUntilNextBoundary(Interval interval) {
+		return getTimeUntilNextBoundary(interval, false);
+	}
+
+	/**
+	 * Finds how long it will be before any active pattern's callbacks could
+	 * change, optionally ignoring patterns that must be evaluated
+	 * continuously.
+	 * 
+	 * @param interval
+	 *            the interval most recently evaluated
+	 * @param skipContinuous
+	 *            whether to ignore continuously evaluated patterns
+	 * @return the time in cycles until the next event boundary, zero if some
+	 *         pattern must be evaluated on every update, or null if nothing
+	 *         will change
+	 * @see Pattern#getTimeUntilNextBoundary(Interval, boolean)
+	 */
+	public BigFraction getTimeUntilNextBoundary(Interval interval,
+			boolean skipContinuous) {
+		BigFraction result = null;
+		for (Pattern pattern : getPatternsWithActiveMappings()) {
+			BigFraction until = pattern.getTimeUntilNextBoundary(interval,
+					skipContinuous);
+			if (until == null)
+				continue;
+			if (until.getNumerator().signum() <= 0)
+				return BigFraction.ZERO;
+			if (result == null || Ticks.compare(until, result) < 0)
+				result = until;
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the number of milliseconds from the current one to the next at
+	 * which any active pattern's callbacks could change.
+	 * 
+	 * @param skipContinuous
+	 *            whether to ignore continuously evaluated patterns
+	 * @return at least 1, or Long.MAX_VALUE if nothing will change
+	 */
+	long getMillisUntilNextBoundary(boolean skipContinuous) {
+		BigFraction until = getTimeUntilNextBoundary(getCurrentInterval(),
+				skipContinuous);
+		if (until == null)
+			return Long.MAX_VALUE;
+		return Math.max(1, tempoMap.millisUntil(getElapsedMillis(), until));
+	}
+
+	/**
+	 * @return true if any active pattern must be evaluated on every update
+	 * @see Pattern#hasContinuousActiveMappings()
+	 */
+	public boolean hasContinuousActiveMappings() {
+		for (Pattern pattern : getPatternsWithActiveMappings()) {
+			if (pattern.hasContinuousActiveMappings())
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Retrieve the patterns that we must query for callbacks.
 	 * 
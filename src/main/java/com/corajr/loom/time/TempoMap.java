@@ -0,0 +1,463 @@
+package com.corajr.loom.time;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * Maps elapsed milliseconds to cycles for a {@link Scheduler}, allowing the
+ * period to change during playback without the cycle position jumping.
+ *
+ * The map is a sequence of segments: steps, during which the period is
+ * constant, and ramps, during which the tempo changes linearly over time from
+ * one period to another. Changes are scheduled at positions in cycles and must
+ * be added in order; scheduling a change discards any later ones.
+ *
+ * While the period is constant and divides {@link Ticks#PER_CYCLE}, positions
+ * are computed exactly in ticks. During and after a ramp they are computed in
+ * floating point and rounded to the nearest tick, until the next change made
+ * with {@link Scheduler#setPeriod(long)}.
+ *
+ * @author corajr
+ */
+public class TempoMap {
+	private static final double HALF_MILLI_TICKS = Ticks.PER_CYCLE / 2.0;
+
+	/**
+	 * A portion of the map beginning at a given time and position.
+	 */
+	static final class Segment {
+		final double startMillis;
+		final BigFraction exactStartMillis; // null if not an exact time
+		final BigFraction startCycle;
+		final double startCycleValue;
+
+		/**
+		 * The period of a step, or the final period of a ramp.
+		 */
+		final long periodMillis;
+
+		final boolean ramp;
+		final BigFraction endCycle; // of a ramp
+		final double startRate; // cycles per millisecond
+		final double endRate;
+		final double duration; // of a ramp, in milliseconds
+
+		final boolean tickExact;
+		final long ticksPerMilli;
+		final long offsetTicks;
+		final long halfTicks;
+
+		/**
+		 * One millisecond in cycles (the most for a ramp), and half of that.
+		 */
+		final BigFraction resolution;
+		final BigFraction halfResolution;
+
+		/**
+		 * Creates a step.
+		 */
+		Segment(double startMillis, BigFraction exactStartMillis,
+				BigFraction startCycle, long periodMillis) {
+			this.startMillis = startMillis;
+			this.exactStartMillis = exactStartMillis;
+			this.startCycle = startCycle;
+			this.startCycleValue = startCycle.doubleValue();
+			this.periodMillis = periodMillis;
+
+			this.ramp = false;
+			this.endCycle = null;
+			this.startRate = this.endRate = 1.0 / periodMillis;
+			this.duration = Double.POSITIVE_INFINITY;
+
+			this.resolution = new BigFraction(1, periodMillis);
+			this.halfResolution = new BigFraction(1, 2 * periodMillis);
+
+			long perMilli = Ticks.PER_CYCLE % periodMillis == 0 ? Ticks.PER_CYCLE
+					/ periodMillis
+					: 0;
+			BigFraction offset = null;
+			if (exactStartMillis != null && perMilli > 0 && perMilli % 2 == 0
+					&& Ticks.isExact(startCycle)) {
+				offset = new BigFraction(Ticks.fromFraction(startCycle))
+						.subtract(exactStartMillis.multiply(perMilli));
+				if (!offset.getDenominator().equals(BigInteger.ONE)
+						|| offset.getNumerator().bitLength() > 62)
+					offset = null;
+			}
+
+			this.tickExact = offset != null;
+			this.ticksPerMilli = tickExact ? perMilli : 0;
+			this.offsetTicks = tickExact ? offset.getNumerator().longValue()
+					: 0;
+			this.halfTicks = tickExact ? perMilli / 2 : 0;
+		}
+
+		/**
+		 * Creates a ramp.
+		 */
+		Segment(double startMillis, BigFraction startCycle,
+				BigFraction endCycle, double startRate, double endRate,
+				double duration, long periodMillis) {
+			this.startMillis = startMillis;
+			this.exactStartMillis = null;
+			this.startCycle = startCycle;
+			this.startCycleValue = startCycle.doubleValue();
+			this.periodMillis = periodMillis;
+
+			this.ramp = true;
+			this.endCycle = endCycle;
+			this.startRate = startRate;
+			this.endRate = endRate;
+			this.duration = duration;
+
+			this.tickExact = false;
+			this.ticksPerMilli = 0;
+			this.offsetTicks = 0;
+			this.halfTicks = 0;
+
+			long maxTicks = (long) Math.ceil(Math.max(startRate, endRate)
+					* Ticks.PER_CYCLE);
+			this.resolution = Ticks.toFraction(maxTicks);
+			this.halfResolution = resolution.divide(2);
+		}
+
+		/**
+		 * @return true if positions in this segment can be computed exactly
+		 */
+		boolean isExact() {
+			return !ramp && exactStartMillis != null;
+		}
+
+		/**
+		 * @return the tempo at a given time, in cycles per millisecond
+		 */
+		double rateAt(double millis) {
+			if (!ramp)
+				return startRate;
+			double t = Math.min(Math.max(millis - startMillis, 0), duration);
+			return startRate + (endRate - startRate) * t / duration;
+		}
+
+		double cyclesAt(double millis) {
+			double t = millis - startMillis;
+			if (!ramp)
+				return startCycleValue + t * startRate;
+			return startCycleValue + startRate * t + (endRate - startRate) * t
+					* t / (2 * duration);
+		}
+
+		/**
+		 * Returns the exact position at a given time if possible, otherwise
+		 * the position rounded to the nearest tick.
+		 */
+		BigFraction cyclesAt(long millis) {
+			if (isExact())
+				return startCycle.add(new BigFraction(millis).subtract(
+						exactStartMillis).divide(periodMillis));
+			return Ticks.toFraction(ticksAt(millis));
+		}
+
+		long ticksAt(long millis) {
+			if (tickExact)
+				return offsetTicks + millis * ticksPerMilli;
+			return Math.round(cyclesAt((double) millis) * Ticks.PER_CYCLE);
+		}
+
+		/**
+		 * @return half a millisecond's worth of ticks at a given time
+		 */
+		long halfTicksAt(long millis) {
+			if (tickExact)
+				return halfTicks;
+			return Math.round(rateAt(millis) * HALF_MILLI_TICKS);
+		}
+
+		double millisAt(double cycles) {
+			double d = cycles - startCycleValue;
+			if (!ramp)
+				return startMillis + d / startRate;
+
+			// solve startRate*t + (endRate - startRate)*t^2/(2*duration) = d
+			double a = (endRate - startRate) / (2 * duration);
+			double disc = startRate * startRate + 4 * a * d;
+			if (disc < 0)
+				disc = 0;
+			return startMillis + 2 * d / (startRate + Math.sqrt(disc));
+		}
+	}
+
+	private volatile Segment[] segments;
+
+	/**
+	 * Creates a map with a constant period.
+	 *
+	 * @param periodMillis
+	 *            the period of a cycle in milliseconds
+	 */
+	public TempoMap(long periodMillis) {
+		reset(periodMillis);
+	}
+
+	/**
+	 * Removes all changes, leaving a constant period.
+	 *
+	 * @param periodMillis
+	 *            the period of a cycle in milliseconds
+	 */
+	public synchronized void reset(long periodMillis) {
+		checkPeriod(periodMillis);
+		segments = new Segment[] { new Segment(0, BigFraction.ZERO,
+				BigFraction.ZERO, periodMillis) };
+	}
+
+	private static void checkPeriod(long periodMillis) {
+		if (periodMillis < 1)
+			throw new IllegalArgumentException(
+					"Period must be at least 1 millisecond.");
+	}
+
+	/**
+	 * Schedules a change of period at the given position.
+	 *
+	 * @param cycle
+	 *            the position of the change, in cycles
+	 * @param periodMillis
+	 *            the new period in milliseconds
+	 * @return this tempo map
+	 */
+	public synchronized TempoMap setPeriodAt(BigFraction cycle,
+			long periodMillis) {
+		checkPeriod(periodMillis);
+
+		Segment segment = segmentForCycle(cycle.doubleValue());
+		BigFraction exactMillis = null;
+		if (segment.isExact())
+			exactMillis = segment.exactStartMillis.add(cycle.subtract(
+					segment.startCycle).multiply(segment.periodMillis));
+		double millis = exactMillis != null ? exactMillis.doubleValue()
+				: segment.millisAt(cycle.doubleValue());
+
+		append(new Segment(millis, exactMillis, cycle, periodMillis));
+		return this;
+	}
+
+	/**
+	 * Schedules a gradual change of period. The tempo (cycles per unit time)
+	 * changes linearly over time, from its value at <code>fromCycle</code> to
+	 * the new period at <code>toCycle</code>.
+	 *
+	 * @param fromCycle
+	 *            the position at which the ramp begins
+	 * @param toCycle
+	 *            the position at which the ramp ends
+	 * @param periodMillis
+	 *            the period reached at the end of the ramp
+	 * @return this tempo map
+	 */
+	public synchronized TempoMap rampPeriod(BigFraction fromCycle,
+			BigFraction toCycle, long periodMillis) {
+		checkPeriod(periodMillis);
+		if (toCycle.compareTo(fromCycle) <= 0)
+			throw new IllegalArgumentException(
+					"A ramp must end after it begins.");
+
+		double from = fromCycle.doubleValue();
+		Segment segment = segmentForCycle(from);
+		double startMillis = segment.millisAt(from);
+		double startRate = segment.rateAt(startMillis);
+		double endRate = 1.0 / periodMillis;
+		double length = toCycle.subtract(fromCycle).doubleValue();
+		double duration = 2 * length / (startRate + endRate);
+
+		append(new Segment(startMillis, fromCycle, toCycle, startRate,
+				endRate, duration, periodMillis));
+		append(new Segment(startMillis + duration, null, toCycle,
+				periodMillis));
+		return this;
+	}
+
+	/**
+	 * Changes the period at the start of the map, keeping the scheduled
+	 * changes. Since they are placed by position, they are scheduled again so
+	 * that each happens at the time the new period brings it to.
+	 *
+	 * @param periodMillis
+	 *            the new initial period
+	 */
+	synchronized void setInitialPeriod(long periodMillis) {
+		checkPeriod(periodMillis);
+		Segment[] scheduled = segments;
+		reset(periodMillis);
+		reschedule(scheduled, BigFraction.ZERO);
+	}
+
+	/**
+	 * Changes the period from the given time onward, keeping the position at
+	 * that time. As with {@link #setInitialPeriod(long)}, the changes
+	 * scheduled after that position are kept and scheduled again; a ramp in
+	 * progress is cut short, and its final period takes effect where the ramp
+	 * would have ended.
+	 *
+	 * @param elapsedMillis
+	 *            the time of the change
+	 * @param periodMillis
+	 *            the new period
+	 */
+	synchronized void setPeriodFrom(long elapsedMillis, long periodMillis) {
+		checkPeriod(periodMillis);
+		Segment[] scheduled = segments;
+		Segment segment = segmentAt(elapsedMillis);
+		BigFraction cycle = segment.isExact() ? segment
+				.cyclesAt(elapsedMillis) : Ticks.toFraction(segment
+				.ticksAt(elapsedMillis));
+		append(new Segment(elapsedMillis, new BigFraction(elapsedMillis),
+				cycle, periodMillis));
+		reschedule(scheduled, cycle);
+	}
+
+	/**
+	 * Schedules again the changes from <code>scheduled</code> that begin
+	 * after the given position, in order.
+	 */
+	private void reschedule(Segment[] scheduled, BigFraction after) {
+		for (int i = 0; i < scheduled.length; i++) {
+			Segment segment = scheduled[i];
+			if (segment.startCycle.compareTo(after) <= 0)
+				continue;
+			if (segment.ramp) {
+				rampPeriod(segment.startCycle, segment.endCycle,
+						segment.periodMillis);
+				// skip the step that ends the ramp, which was just added
+				if (i + 1 < scheduled.length && !scheduled[i + 1].ramp
+						&& scheduled[i + 1].startCycle.equals(segment.endCycle))
+					i++;
+			} else {
+				setPeriodAt(segment.startCycle, segment.periodMillis);
+			}
+		}
+	}
+
+	/**
+	 * Adds a segment, discarding any that begin at or after it.
+	 */
+	private void append(Segment segment) {
+		Segment[] current = segments;
+		int keep = current.length;
+		while (keep > 1 && current[keep - 1].startMillis >= segment.startMillis)
+			keep--;
+		if (keep == 1 && current[0].startMillis >= segment.startMillis)
+			keep = 0;
+
+		Segment[] updated = Arrays.copyOf(current, keep + 1);
+		updated[keep] = segment;
+		segments = updated;
+	}
+
+	/**
+	 * Finds the segment in effect at a given time.
+	 */
+	Segment segmentAt(long millis) {
+		Segment[] segments = this.segments;
+		int lo = 0;
+		int hi = segments.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (segments[mid].startMillis <= millis)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return segments[lo];
+	}
+
+	private Segment segmentForCycle(double cycle) {
+		Segment[] segments = this.segments;
+		int lo = 0;
+		int hi = segments.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (segments[mid].startCycleValue <= cycle)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return segments[lo];
+	}
+
+	/**
+	 * @return true if the period never changes
+	 */
+	public boolean isConstant() {
+		return segments.length == 1;
+	}
+
+	/**
+	 * Returns the period in effect at a given time, rounded to the nearest
+	 * millisecond during a ramp.
+	 *
+	 * @param elapsedMillis
+	 *            the time in milliseconds
+	 * @return the period in milliseconds
+	 */
+	public long getPeriodAt(long elapsedMillis) {
+		Segment segment = segmentAt(elapsedMillis);
+		if (!segment.ramp)
+			return segment.periodMillis;
+		return Math.round(1.0 / segment.rateAt(elapsedMillis));
+	}
+
+	/**
+	 * Converts elapsed time into a position in cycles.
+	 *
+	 * @param elapsedMillis
+	 *            the time in milliseconds
+	 * @return the position in cycles
+	 */
+	public BigFraction toCycles(long elapsedMillis) {
+		return segmentAt(elapsedMillis).cyclesAt(elapsedMillis);
+	}
+
+	/**
+	 * Converts a position in cycles into elapsed time.
+	 *
+	 * @param cycles
+	 *            the position in cycles
+	 * @return the time in milliseconds
+	 */
+	public double toMillis(BigFraction cycles) {
+		Segment segment = segmentForCycle(cycles.doubleValue());
+		if (segment.isExact())
+			return segment.exactStartMillis.add(
+					cycles.subtract(segment.startCycle).multiply(
+							segment.periodMillis)).doubleValue();
+		return segment.millisAt(cycles.doubleValue());
+	}
+
+	/**
+	 * Finds how many whole milliseconds after the given time a position the
+	 * given number of cycles later is reached, rounding up (though possibly
+	 * early by a millisecond when the period changes in between).
+	 */
+	long millisUntil(long elapsedMillis, BigFraction cycles) {
+		Segment segment = segmentAt(elapsedMillis);
+		if (segment.isExact()) {
+			long millis = IntervalMath.ceil(cycles
+					.multiply(segment.periodMillis));
+			Segment[] segments = this.segments;
+			Segment last = segments[segments.length - 1];
+			if (segment == last
+					|| segmentAt(elapsedMillis + millis) == segment)
+				return millis;
+		}
+
+		double from = segment.cyclesAt((double) elapsedMillis);
+		double target = toMillis(from + cycles.doubleValue());
+		return (long) Math.ceil(target - elapsedMillis - IntervalMath.EPSILON);
+	}
+
+	private double toMillis(double cycles) {
+		return segmentForCycle(cycles).millisAt(cycles);
+	}
+}
@@ -0,0 +1,176 @@
+package com.corajr.loom.time;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Comparator;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * Fixed-resolution integer time. A cycle is divided into {@link #PER_CYCLE}
+ * ticks, a highly composite number chosen so that the subdivisions used in
+ * practice (halves, thirds, fifths, sevenths, millisecond periods, etc.) are
+ * represented exactly by a single <code>long</code>.
+ *
+ * Fractions whose denominator does not divide {@link #PER_CYCLE} cannot be
+ * represented as ticks; callers should check {@link #isExact} and fall back to
+ * {@link BigFraction} arithmetic in that case.
+ *
+ * @author corajr
+ */
+public final class Ticks {
+	/**
+	 * The number of ticks in one cycle: 2^8 * 3^3 * 5^3 * 7 * 11 * 13.
+	 */
+	public static final long PER_CYCLE = 864864000L;
+
+	/**
+	 * Orders fractions without allocating when their numerators and
+	 * denominators fit in 31 bits.
+	 */
+	public static final Comparator<BigFraction> COMPARATOR = new FractionComparator();
+
+	private static class FractionComparator implements Comparator<BigFraction>,
+			Serializable {
+		private static final long serialVersionUID = 2863391826870633512L;
+
+		@Override
+		public int compare(BigFraction a, BigFraction b) {
+			return Ticks.compare(a, b);
+		}
+	}
+
+	private Ticks() {
+	}
+
+	/**
+	 * Checks whether a fraction can be represented exactly as a number of
+	 * ticks.
+	 *
+	 * @param fraction
+	 *            the fraction to check
+	 * @return true if {@link #fromFraction} will not lose precision or
+	 *         overflow; this holds exactly for the fractions equal to
+	 *         <code>toFraction(ticks)</code> for some <code>long</code>
+	 */
+	public static boolean isExact(BigFraction fraction) {
+		BigInteger den = fraction.getDenominator();
+		if (den.bitLength() > 31)
+			return false;
+		long d = den.longValue();
+		if (PER_CYCLE % d != 0)
+			return false;
+
+		BigInteger num = fraction.getNumerator();
+		if (num.bitLength() > 63)
+			return false;
+		long n = num.longValue();
+		long scale = PER_CYCLE / d;
+		return n >= 0 ? n <= Long.MAX_VALUE / scale
+				: n >= Long.MIN_VALUE / scale;
+	}
+
+	/**
+	 * Converts a fraction of a cycle into ticks.
+	 *
+	 * @param fraction
+	 *            the fraction to convert
+	 * @return the number of ticks
+	 * @throws ArithmeticException
+	 *             if the fraction cannot be represented exactly
+	 */
+	public static long fromFraction(BigFraction fraction)
+			throws ArithmeticException {
+		if (!isExact(fraction))
+			throw new ArithmeticException(fraction
+					+ " cannot be represented in ticks.");
+		return fraction.getNumerator().longValue()
+				* (PER_CYCLE / fraction.getDenominator().longValue());
+	}
+
+	/**
+	 * Converts ticks back into a fraction of a cycle.
+	 *
+	 * @param ticks
+	 *            the number of ticks
+	 * @return the equivalent fraction
+	 */
+	public static BigFraction toFraction(long ticks) {
+		return new BigFraction(ticks, PER_CYCLE);
+	}
+
+	/**
+	 * Converts a fraction of a cycle into ticks, rounding down if it cannot be
+	 * represented exactly.
+	 *
+	 * @param fraction
+	 *            the fraction to convert
+	 * @return the largest number of ticks not after the fraction
+	 */
+	public static long floor(BigFraction fraction) {
+		if (isExact(fraction))
+			return fromFraction(fraction);
+
+		BigInteger[] quotient = fraction.getNumerator()
+				.multiply(BigInteger.valueOf(PER_CYCLE))
+				.divideAndRemainder(fraction.getDenominator());
+		long floor = quotient[0].longValue();
+		if (quotient[1].signum() < 0)
+			floor--;
+		return floor;
+	}
+
+	/**
+	 * Converts ticks into a (possibly inexact) number of cycles.
+	 *
+	 * @param ticks
+	 *            the number of ticks
+	 * @return the equivalent number of cycles
+	 */
+	public static double toDouble(long ticks) {
+		return (double) ticks / PER_CYCLE;
+	}
+
+	/**
+	 * Compares two fractions, cross-multiplying in <code>long</code> arithmetic
+	 * when possible instead of allocating BigIntegers.
+	 *
+	 * @param a
+	 *            the first fraction
+	 * @param b
+	 *            the second fraction
+	 * @return a negative number, zero, or a positive number as a is less than,
+	 *         equal to, or greater than b
+	 */
+	public static int compare(BigFraction a, BigFraction b) {
+		BigInteger an = a.getNumerator();
+		BigInteger ad = a.getDenominator();
+		BigInteger bn = b.getNumerator();
+		BigInteger bd = b.getDenominator();
+		if (an.bitLength() < 32 && ad.bitLength() < 32 && bn.bitLength() < 32
+				&& bd.bitLength() < 32) {
+			return Long.compare(an.longValue() * bd.longValue(), bn.longValue()
+					* ad.longValue());
+		}
+		return a.compareTo(b);
+	}
+
+	/**
+	 * Checks whether the sum of two longs is guaranteed to fit in a long.
+	 */
+	static boolean canAdd(long a, long b) {
+		long r = a + b;
+		return ((a ^ r) & (b ^ r)) >= 0;
+	}
+
+	/**
+	 * Checks whether the product of two longs is guaranteed to fit in a long.
+	 */
+	static boolean canMultiply(long a, long b) {
+		return bits(a) + bits(b) < 63;
+	}
+
+	private static int bits(long x) {
+		return 64 - Long.numberOfLeadingZeros(x < 0 ? -x : x);
+	}
+}
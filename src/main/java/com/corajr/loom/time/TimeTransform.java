@@ -0,0 +1,148 @@
+package com.corajr.loom.time;
+
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * A chain of time transformations (scale, offset, and loop) compiled so that
+ * it can be applied in one go. Each pattern applies one such transformation
+ * to its parent's time; a chain of them from the root of a pattern tree to a
+ * leaf gives the leaf's time.
+ *
+ * Consecutive transformations that do not wrap around a loop are affine, so
+ * they are folded into a single stage (scaling by the product of the scales
+ * and adding the combined offset). Only the transformations that wrap, or
+ * that reverse time within a loop, start a new stage, so a deep chain of
+ * nested patterns usually needs only one or two stages. Since the arithmetic
+ * is exact, the result is the same as applying each transformation in turn.
+ *
+ * Instances are immutable.
+ *
+ * @author corajr
+ */
+public class TimeTransform {
+	public static final TimeTransform IDENTITY = new TimeTransform(
+			new Stage[0]);
+
+	private static final class Stage {
+		final BigFraction scale;
+		final BigFraction offset;
+		final Interval loopInterval;
+		final boolean wrap;
+
+		Stage(BigFraction scale, BigFraction offset, Interval loopInterval,
+				boolean wrap) {
+			this.scale = scale;
+			this.offset = offset;
+			this.loopInterval = loopInterval;
+			this.wrap = wrap;
+		}
+
+		boolean isAffine() {
+			return !wrap && scale.getNumerator().signum() > 0;
+		}
+	}
+
+	private final Stage[] stages;
+
+	private TimeTransform(Stage[] stages) {
+		this.stages = stages;
+	}
+
+	/**
+	 * Returns the result of applying this transformation and then another.
+	 *
+	 * @param scale
+	 *            the factor by which to scale time; if negative, time is
+	 *            reversed within the loop interval
+	 * @param offset
+	 *            the amount to add after scaling
+	 * @param loopInterval
+	 *            the loop interval
+	 * @param wrap
+	 *            whether to wrap the result into the loop interval
+	 * @return the combined transformation
+	 * @see #apply(Interval, BigFraction, BigFraction, Interval, boolean)
+	 */
+	public TimeTransform then(BigFraction scale, BigFraction offset,
+			Interval loopInterval, boolean wrap) {
+		Stage next = new Stage(scale, offset, loopInterval, wrap);
+
+		int n = stages.length;
+		if (n > 0 && stages[n - 1].isAffine()
+				&& scale.getNumerator().signum() > 0) {
+			// (x * s1 + o1) * s2 + o2 = x * (s1 * s2) + (o1 * s2 + o2)
+			Stage last = stages[n - 1];
+			Stage[] folded = Arrays.copyOf(stages, n);
+			folded[n - 1] = new Stage(last.scale.multiply(scale), last.offset
+					.multiply(scale).add(offset), loopInterval, wrap);
+			return new TimeTransform(folded);
+		}
+
+		Stage[] appended = Arrays.copyOf(stages, n + 1);
+		appended[n] = next;
+		return new TimeTransform(appended);
+	}
+
+	/**
+	 * @param interval
+	 *            an interval in the time of the root of the chain
+	 * @return the interval in the time at the end of the chain
+	 */
+	public Interval apply(Interval interval) {
+		for (Stage stage : stages) {
+			interval = apply(interval, stage.scale, stage.offset,
+					stage.loopInterval, stage.wrap);
+		}
+		return interval;
+	}
+
+	/**
+	 * Applies a single transformation: scales the interval (reversing it
+	 * within <code>loopInterval</code> if the scale is negative), adds the
+	 * offset, and then wraps it into <code>loopInterval</code> if
+	 * <code>wrap</code> is set.
+	 *
+	 * @param interval
+	 *            the interval to transform
+	 * @param scale
+	 *            the factor by which to scale time
+	 * @param offset
+	 *            the amount to add after scaling
+	 * @param loopInterval
+	 *            the loop interval
+	 * @param wrap
+	 *            whether to wrap the result into the loop interval
+	 * @return the transformed interval
+	 */
+	public static Interval apply(Interval interval, BigFraction scale,
+			BigFraction offset, Interval loopInterval, boolean wrap) {
+		if (scale.getNumerator().signum() > 0) {
+			if (!scale.equals(BigFraction.ONE))
+				interval = interval.multiply(scale);
+		} else {
+			interval = interval.multiplyMod(scale, loopInterval);
+		}
+
+		if (offset.getNumerator().signum() != 0)
+			interval = interval.add(offset);
+
+		if (wrap)
+			interval = interval.modulo(loopInterval);
+
+		return interval;
+	}
+
+	/**
+	 * @return the number of stages left after folding
+	 */
+	public int getStageCount() {
+		return stages.length;
+	}
+
+	@Override
+	public String toString() {
+		return "TimeTransform(" + stages.length + " stages)";
+	}
+}
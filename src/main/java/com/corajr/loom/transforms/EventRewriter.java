@@ -1,18 +1,44 @@
 package com.corajr.loom.transforms;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import com.corajr.loom.EventCollection;
+import com.corajr.loom.EventQueryable;
 import com.corajr.loom.LEvent;
 
 /**
  * Takes in an EventCollection and outputs a new EventCollection.
  * 
+ * Each event is rewritten by the first rule that can apply to it. With a
+ * pool set (see {@link #setPool(ForkJoinPool)}), large inputs are split into
+ * ranges that are rewritten in parallel; the results are then bulk-loaded
+ * into the new collection.
+ * 
  * @author corajr
  * 
  */
 public abstract class EventRewriter {
+	/**
+	 * Inputs smaller than this are always rewritten serially.
+	 */
+	static final int MIN_PARALLEL_EVENTS = 1024;
+
 	ArrayList<Rule> rules;
+	private volatile ForkJoinPool pool = null;
+	private volatile RewriteCache cache = null;
+
+	/**
+	 * The position of the first rule matching each value (see
+	 * {@link Rule#getMatchValue()}).
+	 */
+	private final Map<Double, Integer> rulesByValue = new HashMap<Double, Integer>();
+
+	/**
+	 * The positions of the rules that do not match a single value.
+	 */
+	private final int[] generalRules;
 
 	public EventRewriter(Rule... rules) {
 		this(Arrays.asList(rules));
@@ -21,21 +47,265 @@ public abstract class EventRewriter {
 	public EventRewriter(Collection<Rule> rules) {
 		this.rules = new ArrayList<Rule>();
 		this.rules.addAll(rules);
+
+		List<Integer> general = new ArrayList<Integer>();
+		for (int i = 0; i < this.rules.size(); i++) {
+			Double value = this.rules.get(i).getMatchValue();
+			if (value == null || value.isNaN()) {
+				general.add(i);
+			} else {
+				Double key = keyFor(value);
+				if (!rulesByValue.containsKey(key))
+					rulesByValue.put(key, i);
+			}
+		}
+
+		generalRules = new int[general.size()];
+		for (int i = 0; i < generalRules.length; i++) {
+			generalRules[i] = general.get(i);
+		}
+	}
+
+	/**
+	 * Treats 0.0 and -0.0 as the same key, as <code>==</code> does.
+	 */
+	private static Double keyFor(double value) {
+		return value + 0.0;
+	}
+
+	/**
+	 * Finds the first rule that can apply to an event. Rules that match a
+	 * single value are looked up by the event's value; only the general rules
+	 * before that one need to be tried.
+	 * 
+	 * @return the rule, or null if none applies
+	 */
+	Rule ruleFor(int index, LEvent event) {
+		Integer indexed = rulesByValue.get(keyFor(event.getValue()));
+		int limit = indexed != null ? indexed : Integer.MAX_VALUE;
+
+		for (int position : generalRules) {
+			if (position > limit)
+				break;
+			Rule rule = rules.get(position);
+			if (rule.canApply(index, event))
+				return rule;
+		}
+		return indexed != null ? rules.get(indexed) : null;
+	}
+
+	/**
+	 * Sets the pool used to apply the rules in parallel, or null (the default)
+	 * to apply them serially on the calling thread. Rules must then be safe to
+	 * call from several threads at once.
+	 * 
+	 * @param pool
+	 *            the pool to use
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets a cache for the results of this rewriter, or null (the default)
+	 * to rewrite every time. {@link com.corajr.loom.Pattern#rewrite(EventRewriter)}
+	 * looks results up in the cache before applying the rules.
+	 * 
+	 * @param cache
+	 *            the cache to use
+	 */
+	public void setCache(RewriteCache cache) {
+		this.cache = cache;
+	}
+
+	public RewriteCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Identifies the rules this rewriter currently applies, for
+	 * {@link RewriteCache}. Subclasses with other settings that affect the
+	 * result should add them.
+	 * 
+	 * @return the rules and settings of this rewriter
+	 */
+	List<Object> signature() {
+		return new ArrayList<Object>(rules);
 	}
 
 	public EventCollection apply(EventCollection originalEvents) {
-		EventCollection newEvents = new EventCollection();
-
-		int i = 0;
-		for (LEvent event : originalEvents.values()) {
-			for (Rule rule : rules) {
-				if (rule.canApply(i, event)) {
-					newEvents.addAll(rule.apply(i, event));
-					break;
-				}
+		LEvent[] events = originalEvents.values().toArray(
+				new LEvent[originalEvents.size()]);
+		ForkJoinPool pool = this.pool;
+
+		List<LEvent> newEvents;
+		if (pool == null || events.length < MIN_PARALLEL_EVENTS) {
+			newEvents = new ArrayList<LEvent>();
+			rewrite(events, 0, events.length, newEvents);
+		} else {
+			int grain = Math.max(MIN_PARALLEL_EVENTS / 4, events.length
+					/ (pool.getParallelism() * 4));
+			newEvents = pool.invoke(new Rewriting(events, 0, events.length,
+					grain));
+		}
+		return EventCollection.fromEvents(newEvents);
+	}
+
+	/**
+	 * Rewrites events one at a time as they are read, without building a
+	 * collection. Streams can be chained, so that several rewriters make a
+	 * single pass over the events. The output is sorted if the input is and
+	 * if each rule returns events in order within the original event's
+	 * interval (as the rules in this package do).
+	 * 
+	 * @param events
+	 *            the events to rewrite, sorted by start
+	 * @return the rewritten events
+	 */
+	public Iterator<LEvent> stream(Iterator<LEvent> events) {
+		return new RewriteIterator(events);
+	}
+
+	/**
+	 * Chains several rewriters into one stream.
+	 * 
+	 * @param events
+	 *            the events to rewrite, sorted by start
+	 * @param stages
+	 *            the rewriters to apply, in order
+	 * @return the rewritten events
+	 * @see #stream(Iterator)
+	 */
+	public static Iterator<LEvent> stream(Iterator<LEvent> events,
+			EventRewriter... stages) {
+		for (EventRewriter stage : stages) {
+			events = stage.stream(events);
+		}
+		return events;
+	}
+
+	/**
+	 * Collects a stream of events into a new collection.
+	 * 
+	 * @param events
+	 *            the events
+	 * @return a new EventCollection
+	 */
+	public static EventCollection collect(Iterator<LEvent> events) {
+		List<LEvent> list = new ArrayList<LEvent>();
+		while (events.hasNext()) {
+			list.add(events.next());
+		}
+		return EventCollection.fromEvents(list);
+	}
+
+	/**
+	 * Returns the events of <code>source</code> as rewritten by this rewriter,
+	 * computing only the events that are queried. Each query rewrites just the
+	 * source events that overlap it, so rules that depend on an event's index
+	 * should be used with {@link #apply(EventCollection)} instead.
+	 * 
+	 * @param source
+	 *            the events to rewrite
+	 * @return the rewritten events
+	 */
+	public EventQueryable view(EventQueryable source) {
+		return new RewrittenEvents(source, this);
+	}
+
+	/**
+	 * Reads events from the input and rewrites them on demand, keeping only
+	 * the output of the current event.
+	 */
+	private class RewriteIterator implements Iterator<LEvent> {
+		private final Iterator<LEvent> input;
+		private Iterator<LEvent> pending = Collections.<LEvent> emptyList()
+				.iterator();
+		private int index = 0;
+
+		RewriteIterator(Iterator<LEvent> input) {
+			this.input = input;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!pending.hasNext()) {
+				if (!input.hasNext())
+					return false;
+
+				LEvent event = input.next();
+				Rule rule = ruleFor(index, event);
+				if (rule != null)
+					pending = rule.apply(index, event).iterator();
+				index++;
 			}
-			i++;
+			return true;
+		}
+
+		@Override
+		public LEvent next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return pending.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Applies the first matching rule to each event in a range.
+	 */
+	private void rewrite(LEvent[] events, int from, int to,
+			List<LEvent> newEvents) {
+		for (int i = from; i < to; i++) {
+			LEvent event = events[i];
+			Rule rule = ruleFor(i, event);
+			if (rule != null)
+				newEvents.addAll(rule.apply(i, event));
+		}
+	}
+
+	/**
+	 * Rewrites a range of events, splitting the range in half until it is no
+	 * larger than the grain size. The results are concatenated in order.
+	 */
+	private class Rewriting extends RecursiveTask<List<LEvent>> {
+		private static final long serialVersionUID = 5240138815224463052L;
+
+		private final LEvent[] events;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		Rewriting(LEvent[] events, int from, int to, int grain) {
+			this.events = events;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected List<LEvent> compute() {
+			if (to - from <= grain) {
+				List<LEvent> newEvents = new ArrayList<LEvent>();
+				rewrite(events, from, to, newEvents);
+				return newEvents;
+			}
+
+			int mid = (from + to) >>> 1;
+			Rewriting right = new Rewriting(events, mid, to, grain);
+			right.fork();
+			List<LEvent> newEvents = new Rewriting(events, from, mid, grain)
+					.compute();
+			newEvents.addAll(right.join());
+			return newEvents;
 		}
-		return newEvents;
 	}
 }
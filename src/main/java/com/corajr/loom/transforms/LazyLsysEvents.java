@@ -0,0 +1,246 @@
+package com.corajr.loom.transforms;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+import com.corajr.loom.BoundaryQueryable;
+import com.corajr.loom.EventCollection;
+import com.corajr.loom.EventStore;
+import com.corajr.loom.LEvent;
+import com.corajr.loom.VersionedQueryable;
+import com.corajr.loom.time.Interval;
+
+/**
+ * The events of an L-system after a number of generations, computed on
+ * demand instead of being stored.
+ *
+ * Each rule divides an event's interval equally among its successors, so the
+ * result is a tree whose leaves are the final events. A query descends only
+ * the branches overlapping it, doing O(generations) work per event returned,
+ * and produces the same events (with the same parents) as
+ * {@link LsysRewriter#apply(EventCollection)}.
+ *
+ * @author corajr
+ */
+public class LazyLsysEvents implements BoundaryQueryable, EventStore,
+		VersionedQueryable {
+	private final EventCollection axiom;
+	private final List<Rule> rules;
+	private final int generations;
+
+	/**
+	 * The successors of each symbol, found on first use.
+	 */
+	private final ConcurrentMap<Double, Double[]> successors = new ConcurrentHashMap<Double, Double[]>();
+
+	/**
+	 * The number of events each symbol becomes, by generation.
+	 */
+	private final ConcurrentMap<Double, long[]> counts = new ConcurrentHashMap<Double, long[]>();
+
+	/**
+	 * @param axiom
+	 *            the initial events
+	 * @param rules
+	 *            the rules, which must all be {@link LsysRewriter.LsysRule}s
+	 * @param generations
+	 *            the number of times to apply the rules
+	 */
+	public LazyLsysEvents(EventCollection axiom, List<Rule> rules,
+			int generations) {
+		for (Rule rule : rules) {
+			if (!(rule instanceof LsysRewriter.LsysRule))
+				throw new IllegalArgumentException(
+						"Only L-system rules can be evaluated lazily.");
+		}
+		if (generations < 0)
+			throw new IllegalArgumentException(
+					"Generations cannot be negative.");
+
+		this.axiom = axiom;
+		this.rules = new ArrayList<Rule>(rules);
+		this.generations = generations;
+	}
+
+	/**
+	 * @param value
+	 *            a symbol
+	 * @return the symbol's successors, or null if no rule applies (in which
+	 *         case the event is dropped, as in {@link EventRewriter})
+	 */
+	private Double[] successorsOf(double value) {
+		Double[] result = successors.get(value);
+		if (result == null) {
+			LEvent probe = new LEvent(new Interval(0, 1), value);
+			result = new Double[0];
+			for (Rule rule : rules) {
+				if (rule.canApply(probe)) {
+					result = ((LsysRewriter.LsysRule) rule).replaceWith;
+					break;
+				}
+			}
+			successors.putIfAbsent(value, result);
+		}
+		return result.length > 0 ? result : null;
+	}
+
+	/**
+	 * @return the number of events a symbol becomes after some generations
+	 */
+	private long countOf(double value, int generation) {
+		long[] byGeneration = counts.get(value);
+		if (byGeneration == null) {
+			byGeneration = new long[generations + 1];
+			Arrays.fill(byGeneration, -1);
+			long[] existing = counts.putIfAbsent(value, byGeneration);
+			if (existing != null)
+				byGeneration = existing;
+		}
+
+		long count = byGeneration[generation];
+		if (count < 0) {
+			if (generation == 0) {
+				count = 1;
+			} else {
+				count = 0;
+				Double[] next = successorsOf(value);
+				if (next != null) {
+					for (Double successor : next) {
+						count += countOf(successor, generation - 1);
+					}
+				}
+			}
+			byGeneration[generation] = count;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of events, computed without generating them
+	 */
+	public long size() {
+		long size = 0;
+		for (LEvent e : axiom.values()) {
+			size += countOf(e.getValue(), generations);
+		}
+		return size;
+	}
+
+	public int getGenerations() {
+		return generations;
+	}
+
+	/**
+	 * @return the version of the axiom, since the rules cannot be changed
+	 */
+	@Override
+	public long getVersion() {
+		return axiom.getVersion();
+	}
+
+	@Override
+	public Interval getTotalInterval() {
+		return axiom.getTotalInterval();
+	}
+
+	@Override
+	public Collection<LEvent> getForInterval(Interval interval) {
+		List<LEvent> result = new ArrayList<LEvent>();
+		for (LEvent e : axiom.getForInterval(interval)) {
+			descend(e, generations, interval, result);
+		}
+		return result;
+	}
+
+	private void descend(LEvent event, int remaining, Interval query,
+			List<LEvent> result) {
+		if (remaining == 0) {
+			result.add(event);
+			return;
+		}
+
+		Double[] next = successorsOf(event.getValue());
+		if (next == null)
+			return;
+
+		Interval eventInterval = event.getInterval();
+		BigFraction start = eventInterval.getStart();
+		BigFraction size = eventInterval.getSize().divide(next.length);
+
+		// only the successors that can overlap the query
+		int first = Math.max(0, indexAt(query.getStart(), start, size) - 1);
+		int last = Math.min(next.length - 1,
+				indexAt(query.getEnd(), start, size));
+
+		for (int i = first; i <= last; i++) {
+			LEvent child = new LEvent(childInterval(start, size, i), next[i],
+					event);
+			if (child.containedBy(query))
+				descend(child, remaining - 1, query, result);
+		}
+	}
+
+	/**
+	 * The next boundary is either the next start in the axiom or the end of
+	 * the final event that contains the given time, which is found by
+	 * following the single branch containing it.
+	 */
+	@Override
+	public BigFraction getNextBoundary(BigFraction time) {
+		BigFraction next = axiom.getNextBoundary(time);
+
+		Map.Entry<BigFraction, LEvent> entry = axiom.floorEntry(time);
+		if (entry == null
+				|| entry.getValue().getInterval().getEnd().compareTo(time) <= 0)
+			return next;
+
+		LEvent event = entry.getValue();
+		Interval interval = event.getInterval();
+		double value = event.getValue();
+
+		for (int remaining = generations; remaining > 0; remaining--) {
+			Double[] children = successorsOf(value);
+			if (children == null)
+				break; // nothing follows until the end of this branch
+
+			BigFraction start = interval.getStart();
+			BigFraction size = interval.getSize().divide(children.length);
+			int i = Math.min(children.length - 1, indexAt(time, start, size));
+			interval = childInterval(start, size, i);
+			value = children[i];
+		}
+
+		BigFraction end = interval.getEnd();
+		return next == null || end.compareTo(next) < 0 ? end : next;
+	}
+
+	private static Interval childInterval(BigFraction start, BigFraction size,
+			int i) {
+		BigFraction childStart = start.add(size.multiply(i));
+		return new Interval(childStart, childStart.add(size));
+	}
+
+	/**
+	 * @return the index of the successor containing the given time, which may
+	 *         be out of range
+	 */
+	private static int indexAt(BigFraction time, BigFraction start,
+			BigFraction size) {
+		BigFraction offset = time.subtract(start).divide(size);
+		if (offset.compareTo(BigFraction.ZERO) < 0)
+			return -1;
+		if (offset.compareTo(new BigFraction(Integer.MAX_VALUE)) > 0)
+			return Integer.MAX_VALUE;
+		return offset.getNumerator().divide(offset.getDenominator())
+				.intValue();
+	}
+
+	@Override
+	public String toString() {
+		return "LazyLsysEvents(" + generations + " generations of "
+				+ axiom.size() + " events)";
+	}
+}
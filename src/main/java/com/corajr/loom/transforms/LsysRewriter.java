@@ -29,6 +29,11 @@ public class LsysRewriter extends EventRewriter {
 			return event.getValue() == matchOn;
 		}
 
+		@Override
+		public Double getMatchValue() {
+			return matchOn;
+		}
+
 		@Override
 		public Collection<LEvent> apply(int index, LEvent event) {
 			ArrayList<LEvent> newEvents = new ArrayList<LEvent>();
@@ -160,8 +165,63 @@ public class LsysRewriter extends EventRewriter {
 		return commands;
 	}
 
+	/**
+	 * Returns the result of {@link #apply(EventCollection)} without
+	 * generating it in advance. Only the events that are queried are
+	 * computed, so many generations can be used.
+	 * 
+	 * @param axiom
+	 *            the initial events
+	 * @return the events after {@link #generations} generations
+	 * @throws IllegalArgumentException
+	 *             if a rule is not an {@link LsysRule}
+	 * @see LazyLsysEvents
+	 * @see #hasOnlyLsysRules()
+	 */
+	public LazyLsysEvents lazy(EventCollection axiom) {
+		return new LazyLsysEvents(axiom, rules, generations);
+	}
+
+	/**
+	 * @return true if every rule is an {@link LsysRule}, so that the rewrite
+	 *         can be evaluated lazily (see {@link #lazy(EventCollection)})
+	 */
+	public boolean hasOnlyLsysRules() {
+		for (Rule rule : rules) {
+			if (!(rule instanceof LsysRule))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	List<Object> signature() {
+		List<Object> signature = super.signature();
+		signature.add(generations);
+		return signature;
+	}
+
+	/**
+	 * Chains one stream per generation, so that all generations are computed
+	 * in a single pass.
+	 */
+	@Override
+	public Iterator<LEvent> stream(Iterator<LEvent> events) {
+		for (int i = 0; i < generations; i++) {
+			events = super.stream(events);
+		}
+		return events;
+	}
+
+	/**
+	 * Without a pool, the generations are streamed and only the last is
+	 * stored; with one, each generation is rewritten in parallel.
+	 */
 	@Override
 	public EventCollection apply(EventCollection original) {
+		if (getPool() == null)
+			return collect(stream(original.values().iterator()));
+
 		EventCollection events = original;
 		for (int i = 0; i < generations; i++) {
 			events = super.apply(events);
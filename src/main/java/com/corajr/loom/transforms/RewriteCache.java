@@ -0,0 +1,294 @@
+package com.corajr.loom.transforms;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+import com.corajr.loom.EventCollection;
+
+/**
+ * Remembers the results of recent rewrites, so that applying the same
+ * rewriter to the same events again is a lookup instead of a rebuild.
+ *
+ * A rewrite triggered repeatedly, as with
+ * {@link com.corajr.loom.Pattern#every(double, Transform)}, rewrites its own
+ * previous output each time, so results are keyed by the events the run of
+ * rewrites started from and the number of times the rewriter has been
+ * applied since (see {@link Lineage}). Another pattern rewriting the same
+ * source, or the same pattern started again from it, then finds every
+ * generation already computed. A single rewrite is the first generation.
+ *
+ * Keys hold the identity and version of the source (see
+ * {@link EventCollection#getVersion()}) together with the rewriter and its
+ * rules. Results are evicted least recently used first once they hold more
+ * than a given number of events, and dropped once their source is no longer
+ * in use, since sources are only weakly referenced.
+ *
+ * Each caller gets its own copy of a cached result, so changing the events
+ * of one rewritten pattern does not affect another or the cache.
+ *
+ * @author corajr
+ * @see EventRewriter#setCache(RewriteCache)
+ */
+public class RewriteCache {
+	public static final long DEFAULT_MAX_EVENTS = 1 << 20;
+
+	/**
+	 * Where a rewritten collection came from: the source it was rewritten
+	 * from, the rewriter, and the number of times it was applied.
+	 */
+	public static final class Lineage {
+		private final EventCollection source;
+		private final long sourceVersion;
+		private final EventRewriter rewriter;
+		private final List<Object> signature;
+		private final int generation;
+		private final EventCollection result;
+		private final long resultVersion;
+
+		private Lineage(EventCollection source, long sourceVersion,
+				EventRewriter rewriter, List<Object> signature,
+				int generation, EventCollection result) {
+			this.source = source;
+			this.sourceVersion = sourceVersion;
+			this.rewriter = rewriter;
+			this.signature = signature;
+			this.generation = generation;
+			this.result = result;
+			this.resultVersion = result.getVersion();
+		}
+
+		/**
+		 * @return this caller's copy of the rewritten events
+		 */
+		public EventCollection getResult() {
+			return result;
+		}
+
+		/**
+		 * @return the number of times the rewriter has been applied to the
+		 *         source
+		 */
+		public int getGeneration() {
+			return generation;
+		}
+
+		/**
+		 * @return true if rewriting <code>events</code> with
+		 *         <code>rewriter</code> would give the next generation, i.e.
+		 *         if <code>events</code> is the unchanged result and neither
+		 *         the source nor the rules have changed since
+		 */
+		boolean isContinuedBy(EventRewriter rewriter, List<Object> signature,
+				EventCollection events) {
+			return this.rewriter == rewriter && result == events
+					&& result.getVersion() == resultVersion
+					&& source.getVersion() == sourceVersion
+					&& this.signature.equals(signature);
+		}
+	}
+
+	private static final class Key extends WeakReference<EventCollection> {
+		final int sourceHash;
+		final long sourceVersion;
+		final EventRewriter rewriter;
+		final List<Object> signature;
+		final int generation;
+
+		Key(EventCollection source, long sourceVersion,
+				EventRewriter rewriter, List<Object> signature,
+				int generation, ReferenceQueue<EventCollection> queue) {
+			super(source, queue);
+			this.sourceHash = System.identityHashCode(source);
+			this.sourceVersion = sourceVersion;
+			this.rewriter = rewriter;
+			this.signature = signature;
+			this.generation = generation;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = 31 * sourceHash
+					+ (int) (sourceVersion ^ (sourceVersion >>> 32));
+			hash = 31 * hash + generation;
+			return 31 * hash + System.identityHashCode(rewriter);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			EventCollection source = get();
+			return source != null && source == other.get()
+					&& sourceVersion == other.sourceVersion
+					&& generation == other.generation
+					&& rewriter == other.rewriter
+					&& signature.equals(other.signature);
+		}
+	}
+
+	private static final class Entry {
+		final EventCollection result;
+		final int size;
+
+		Entry(EventCollection result) {
+			this.result = result;
+			this.size = result.size();
+		}
+	}
+
+	private final long maxEvents;
+	private long heldEvents = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(
+			16, 0.75f, true);
+	private final ReferenceQueue<EventCollection> collected = new ReferenceQueue<EventCollection>();
+
+	public RewriteCache() {
+		this(DEFAULT_MAX_EVENTS);
+	}
+
+	/**
+	 * @param maxEvents
+	 *            the most events to hold across all cached results
+	 */
+	public RewriteCache(long maxEvents) {
+		if (maxEvents < 0)
+			throw new IllegalArgumentException(
+					"The cache size cannot be negative.");
+		this.maxEvents = maxEvents;
+	}
+
+	/**
+	 * Returns a copy of the cached result of applying <code>rewriter</code> to
+	 * <code>events</code>, applying it if there is none.
+	 *
+	 * @param rewriter
+	 *            the rewriter
+	 * @param events
+	 *            the events to rewrite
+	 * @return the rewritten events
+	 */
+	public EventCollection apply(EventRewriter rewriter, EventCollection events) {
+		return rewrite(rewriter, events, null).getResult();
+	}
+
+	/**
+	 * Rewrites <code>events</code>, continuing the lineage of the previous
+	 * rewrite if <code>events</code> is its result, or starting a new one
+	 * from <code>events</code> otherwise.
+	 *
+	 * @param rewriter
+	 *            the rewriter
+	 * @param events
+	 *            the events to rewrite
+	 * @param previous
+	 *            the lineage of the previous rewrite of the same pattern, or
+	 *            null
+	 * @return the lineage of the result, holding a copy of the rewritten
+	 *         events
+	 */
+	public Lineage rewrite(EventRewriter rewriter, EventCollection events,
+			Lineage previous) {
+		List<Object> signature = rewriter.signature();
+
+		EventCollection source;
+		long sourceVersion;
+		int generation;
+		if (previous != null
+				&& previous.isContinuedBy(rewriter, signature, events)) {
+			source = previous.source;
+			sourceVersion = previous.sourceVersion;
+			generation = previous.generation + 1;
+		} else {
+			source = events;
+			sourceVersion = events.getVersion();
+			generation = 1;
+		}
+
+		Key key = new Key(source, sourceVersion, rewriter, signature,
+				generation, collected);
+
+		EventCollection result = null;
+		synchronized (this) {
+			expunge();
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				result = entry.result;
+			} else {
+				misses++;
+			}
+		}
+
+		if (result == null) {
+			result = rewriter.apply(events);
+			put(key, new Entry(result));
+		}
+
+		return new Lineage(source, sourceVersion, rewriter, signature,
+				generation, result.clone());
+	}
+
+	private synchronized void put(Key key, Entry entry) {
+		if (entry.size > maxEvents)
+			return;
+
+		Entry previous = entries.put(key, entry);
+		if (previous != null)
+			heldEvents -= previous.size;
+		heldEvents += entry.size;
+
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (heldEvents > maxEvents && eldest.hasNext()) {
+			heldEvents -= eldest.next().size;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drops the results whose sources have been garbage collected.
+	 */
+	private void expunge() {
+		Object key;
+		while ((key = collected.poll()) != null) {
+			Entry entry = entries.remove(key);
+			if (entry != null)
+				heldEvents -= entry.size;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		heldEvents = 0;
+	}
+
+	/**
+	 * @return the number of results cached
+	 */
+	public synchronized int size() {
+		expunge();
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of events held across all cached results
+	 */
+	public synchronized long getHeldEvents() {
+		expunge();
+		return heldEvents;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
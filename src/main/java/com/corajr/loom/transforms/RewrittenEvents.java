@@ -0,0 +1,67 @@
+package com.corajr.loom.transforms;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.corajr.loom.EventQueryable;
+import com.corajr.loom.EventStore;
+import com.corajr.loom.EventTransformer;
+import com.corajr.loom.LEvent;
+import com.corajr.loom.VersionedQueryable;
+import com.corajr.loom.time.Interval;
+
+/**
+ * The events of a source as rewritten by an {@link EventRewriter}, computed
+ * each time they are queried rather than stored. Since only the source events
+ * overlapping a query are rewritten, each rewritten event lies within the
+ * source event it came from.
+ * 
+ * @author corajr
+ * @see EventRewriter#view(EventQueryable)
+ */
+public class RewrittenEvents extends EventTransformer implements
+		EventStore, VersionedQueryable {
+	private final EventRewriter rewriter;
+
+	public RewrittenEvents(EventQueryable source, EventRewriter rewriter) {
+		super(source);
+		this.rewriter = rewriter;
+	}
+
+	@Override
+	public Collection<LEvent> apply(Interval interval, LEvent e) {
+		List<LEvent> newEvents = new ArrayList<LEvent>();
+		Iterator<LEvent> it = rewriter.stream(Collections.singletonList(e)
+				.iterator());
+		while (it.hasNext()) {
+			LEvent rewritten = it.next();
+			if (rewritten.containedBy(interval))
+				newEvents.add(rewritten);
+		}
+		return newEvents;
+	}
+
+	/**
+	 * @return the version of the source, or -1 if it has none
+	 */
+	@Override
+	public long getVersion() {
+		EventQueryable source = getParentEvents();
+		if (source instanceof VersionedQueryable)
+			return ((VersionedQueryable) source).getVersion();
+		return -1;
+	}
+
+	/**
+	 * @return the total interval of the source, if it has one
+	 */
+	@Override
+	public Interval getTotalInterval() {
+		EventQueryable source = getParentEvents();
+		return source instanceof EventStore ? ((EventStore) source)
+				.getTotalInterval() : null;
+	}
+}
@@ -20,6 +20,17 @@ public abstract class Rule {
 		return canApply(-1, event);
 	}
 
+	/**
+	 * If this rule applies exactly to the events with a certain value (and
+	 * does not depend on the index), returns that value so that the rule can
+	 * be found without calling {@link #canApply(int, LEvent)}.
+	 * 
+	 * @return the value matched, or null if this rule uses another test
+	 */
+	public Double getMatchValue() {
+		return null;
+	}
+
 	/**
 	 * Return transformed events according to this rule
 	 * 
@@ -2,6 +2,9 @@ package com.corajr.loom.transforms;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.fraction.BigFraction;
 
@@ -59,8 +62,33 @@ public class SubdivideRewriter extends EventRewriter {
 		}
 	}
 
+	@Override
+	public void setPool(ForkJoinPool pool) {
+		super.setPool(pool);
+		for (InnerSubdivideRewriter rewriter : internalRewriters) {
+			rewriter.setPool(pool);
+		}
+	}
+
+	@Override
+	List<Object> signature() {
+		List<Object> signature = new ArrayList<Object>();
+		for (InnerSubdivideRewriter rewriter : internalRewriters) {
+			signature.add(rewriter.signature());
+		}
+		return signature;
+	}
+
+	@Override
+	public Iterator<LEvent> stream(Iterator<LEvent> events) {
+		return stream(events, internalRewriters);
+	}
+
 	@Override
 	public EventCollection apply(EventCollection original) {
+		if (getPool() == null)
+			return collect(stream(original.values().iterator()));
+
 		EventCollection events = original;
 		for (int i = 0; i < internalRewriters.length; i++) {
 			events = internalRewriters[i].apply(events);
@@ -1,6 +1,8 @@
 package com.corajr.loom.util;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.math3.fraction.BigFraction;
 
@@ -13,15 +15,73 @@ import abc.parser.TuneParser;
 public class AbcTools {
 	public static final TuneParser parser = new TuneParser();
 
+	/**
+	 * Creates a pattern from an ABC tune. Tunes with chords (e.g. "[CEG]")
+	 * are loaded into a single {@link PolyphonicEventCollection}, so that all
+	 * notes of a chord are played.
+	 * 
+	 * @param loom
+	 *            the loom to add the pattern to
+	 * @param tuneString
+	 *            the tune
+	 * @return a new pattern, mapped to MIDI data 1
+	 */
 	public static Pattern fromString(Loom loom, String tuneString) {
-		EventCollection tuneEvents = eventsFromString(tuneString);
-		Pattern pat = new Pattern(loom, tuneEvents);
-		pat.setLoopInterval(tuneEvents.getTotalInterval());
+		List<LEvent> notes = new ArrayList<LEvent>();
+		boolean hasChords = parse(tuneString, notes, false);
+
+		Pattern pat;
+		Interval total;
+		if (hasChords) {
+			PolyphonicEventCollection tuneEvents = PolyphonicEventCollection
+					.fromEvents(notes);
+			pat = new Pattern(loom, tuneEvents);
+			total = tuneEvents.getTotalInterval();
+		} else {
+			EventCollection tuneEvents = EventCollection.fromEvents(notes);
+			pat = new Pattern(loom, tuneEvents);
+			total = tuneEvents.getTotalInterval();
+		}
+		pat.setLoopInterval(total);
 		return pat.asMidiData1(0, 127);
 	}
 
+	/**
+	 * Loads the notes of an ABC tune. Only the highest note of each chord is
+	 * kept, so that the events do not overlap.
+	 * 
+	 * @param tuneString
+	 *            the tune
+	 * @return the notes, with values of (MIDI note / 127)
+	 */
 	public static EventCollection eventsFromString(String tuneString) {
-		EventCollection events = new EventCollection();
+		List<LEvent> notes = new ArrayList<LEvent>();
+		parse(tuneString, notes, true);
+		return EventCollection.fromEvents(notes);
+	}
+
+	/**
+	 * Loads all the notes of an ABC tune, including every note of each chord.
+	 * 
+	 * @param tuneString
+	 *            the tune
+	 * @return the notes, with values of (MIDI note / 127)
+	 */
+	public static PolyphonicEventCollection polyphonicEventsFromString(
+			String tuneString) {
+		List<LEvent> notes = new ArrayList<LEvent>();
+		parse(tuneString, notes, false);
+		return PolyphonicEventCollection.fromEvents(notes);
+	}
+
+	/**
+	 * Parses a tune, adding its notes to <code>events</code>.
+	 * 
+	 * @return true if the tune contains chords
+	 */
+	private static boolean parse(String tuneString, List<LEvent> events,
+			boolean highestOnly) {
+		boolean hasChords = false;
 
 		if (!tuneString.startsWith("X:")) {
 			if (tuneString.startsWith("K:")) {
@@ -51,53 +111,74 @@ public class AbcTools {
 				MusicElement elem = it.next();
 				if (elem instanceof KeySignature) {
 					sig = (KeySignature) elem;
+				} else if (elem instanceof MultiNote) {
+					MultiNote chord = (MultiNote) elem;
+					hasChords = true;
+
+					// the chord lasts as long as its shortest note
+					BigFraction step = durationOf(chord.getShortestNote());
+
+					if (highestOnly) {
+						addNote(events, chord.getHighestNote(), sig, start,
+								step);
+					} else {
+						for (Note note : chord.toArray()) {
+							addNote(events, note, sig, start, durationOf(note));
+						}
+					}
+
+					start = start.add(step);
 				} else if (elem instanceof Note) {
 					Note note = (Note) elem;
+					BigFraction duration = durationOf(note);
+					addNote(events, note, sig, start, duration);
+					start = start.add(duration);
+				}
+			}
+		}
 
-					byte whitekey = note.getStrictHeight();
-					short dur = note.getDuration();
-					BigFraction duration = new BigFraction(dur, 96);
+		return hasChords;
+	}
 
-					if (whitekey != Note.REST) {
-						// dealing with actual note
+	private static BigFraction durationOf(Note note) {
+		return new BigFraction(note.getDuration(), 96);
+	}
 
-						byte accidental = AccidentalType.NONE;
-						if (note.hasAccidental()) {
-							accidental = note.getAccidental();
-						} else {
-							if (sig != null) {
-								accidental = sig.getAccidentalFor(whitekey);
-							}
-						}
-						byte octave = note.getOctaveTransposition();
-
-						int octaveStart = 60 + (12 * octave);
-
-						int midinote = octaveStart + whitekey;
-
-						switch (accidental) {
-						case AccidentalType.SHARP:
-							midinote++;
-							break;
-						case AccidentalType.FLAT:
-							midinote--;
-							break;
-						case AccidentalType.NONE:
-						case AccidentalType.NATURAL:
-						default:
-							break;
-						}
-						Interval interval = new Interval(start,
-								start.add(duration));
-						events.add(new LEvent(interval, midinote / 127.0));
-					}
+	private static void addNote(List<LEvent> events, Note note,
+			KeySignature sig, BigFraction start, BigFraction duration) {
+		byte whitekey = note.getStrictHeight();
+		if (whitekey == Note.REST)
+			return;
 
-					start = start.add(duration);
+		// dealing with actual note
 
-				}
+		byte accidental = AccidentalType.NONE;
+		if (note.hasAccidental()) {
+			accidental = note.getAccidental();
+		} else {
+			if (sig != null) {
+				accidental = sig.getAccidentalFor(whitekey);
 			}
 		}
-
-		return events;
+		byte octave = note.getOctaveTransposition();
+
+		int octaveStart = 60 + (12 * octave);
+
+		int midinote = octaveStart + whitekey;
+
+		switch (accidental) {
+		case AccidentalType.SHARP:
+			midinote++;
+			break;
+		case AccidentalType.FLAT:
+			midinote--;
+			break;
+		case AccidentalType.NONE:
+		case AccidentalType.NATURAL:
+		default:
+			break;
+		}
+		Interval interval = new Interval(start, start.add(duration));
+		events.add(new LEvent(interval, midinote / 127.0));
 	}
 }
@@ -17,10 +17,10 @@ public class CallableOnChange extends StatefulCallable {
 	}
 
 	@Override
-	public Void call() throws Exception {
+	public Callable<?> advance() {
 		int priorValue = lastValue.getAndSet(index);
 		if (priorValue != index) {
-			inner.call();
+			return inner;
 		}
 		return null;
 	}
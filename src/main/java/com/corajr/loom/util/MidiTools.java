@@ -5,6 +5,11 @@ import java.util.*;
 
 import javax.sound.midi.*;
 
+import org.apache.commons.math3.fraction.BigFraction;
+
+import com.corajr.loom.*;
+import com.corajr.loom.time.Interval;
+
 public class MidiTools {
 	public static void printMidi(MidiMessage message) {
 		printMidiRaw(message.getMessage());
@@ -22,7 +27,7 @@ public class MidiTools {
 		System.out.println();
 	}
 
-	public static Track[] readTracksFrom(File midiFile) {
+	public static Sequence readSequenceFrom(File midiFile) {
 		Sequence sequence = null;
 		try {
 			sequence = MidiSystem.getSequence(midiFile);
@@ -34,7 +39,11 @@ public class MidiTools {
 			throw new IllegalArgumentException("MIDI file "
 					+ midiFile.getPath() + " could not be loaded.");
 
-		return sequence.getTracks();
+		return sequence;
+	}
+
+	public static Track[] readTracksFrom(File midiFile) {
+		return readSequenceFrom(midiFile).getTracks();
 	}
 
 	/**
@@ -54,6 +63,97 @@ public class MidiTools {
 		return events;
 	}
 
+	/**
+	 * Loads the notes of a MIDI file (with all tracks collapsed into one) as
+	 * events, which may overlap. Each NOTE_ON is paired with the next
+	 * NOTE_OFF (or NOTE_ON with velocity 0) for the same channel and note. One
+	 * cycle is taken to be a whole note, i.e. four quarter notes.
+	 * 
+	 * @param midiFile
+	 *            the MIDI file to be loaded
+	 * @return the notes, with values of (MIDI note / 127)
+	 */
+	public static PolyphonicEventCollection eventsFromFile(File midiFile) {
+		Sequence sequence = readSequenceFrom(midiFile);
+		if (sequence.getDivisionType() != Sequence.PPQ)
+			throw new IllegalArgumentException("MIDI file "
+					+ midiFile.getPath() + " is not timed in beats.");
+
+		long ticksPerCycle = 4L * sequence.getResolution();
+
+		List<MidiEvent> midiEvents = new ArrayList<MidiEvent>();
+		for (Track track : sequence.getTracks()) {
+			for (int i = 0; i < track.size(); i++) {
+				midiEvents.add(track.get(i));
+			}
+		}
+		Collections.sort(midiEvents, new Comparator<MidiEvent>() {
+			@Override
+			public int compare(MidiEvent a, MidiEvent b) {
+				return Long.compare(a.getTick(), b.getTick());
+			}
+		});
+
+		Map<Integer, Deque<Long>> sounding = new HashMap<Integer, Deque<Long>>();
+		List<LEvent> notes = new ArrayList<LEvent>();
+
+		for (MidiEvent midiEvent : midiEvents) {
+			if (!(midiEvent.getMessage() instanceof ShortMessage))
+				continue;
+
+			ShortMessage message = (ShortMessage) midiEvent.getMessage();
+			int command = message.getCommand();
+			boolean noteOn = command == ShortMessage.NOTE_ON
+					&& message.getData2() > 0;
+			boolean noteOff = command == ShortMessage.NOTE_OFF
+					|| (command == ShortMessage.NOTE_ON && message.getData2() == 0);
+			if (!noteOn && !noteOff)
+				continue;
+
+			int note = message.getData1();
+			Integer key = (message.getChannel() << 7) | note;
+
+			Deque<Long> onsets = sounding.get(key);
+			if (onsets == null) {
+				onsets = new ArrayDeque<Long>();
+				sounding.put(key, onsets);
+			}
+
+			if (noteOn) {
+				onsets.addLast(midiEvent.getTick());
+			} else if (!onsets.isEmpty()) {
+				long onset = onsets.removeFirst();
+				if (midiEvent.getTick() > onset) {
+					Interval interval = new Interval(new BigFraction(onset,
+							ticksPerCycle), new BigFraction(
+							midiEvent.getTick(), ticksPerCycle));
+					notes.add(new LEvent(interval, note / 127.0));
+				}
+			}
+		}
+
+		return PolyphonicEventCollection.fromEvents(notes);
+	}
+
+	/**
+	 * Creates a pattern that plays all the notes of a MIDI file, including
+	 * simultaneous ones.
+	 * 
+	 * @param loom
+	 *            the loom to add the pattern to
+	 * @param midiFile
+	 *            the MIDI file to be loaded
+	 * @return a new pattern, mapped to MIDI data 1
+	 * @see #eventsFromFile(File)
+	 */
+	public static Pattern fromFile(Loom loom, File midiFile) {
+		PolyphonicEventCollection events = eventsFromFile(midiFile);
+		Pattern pat = new Pattern(loom, events);
+		if (!events.isEmpty())
+			pat.setLoopInterval(events.getTotalInterval());
+		return pat.asMidiData1(0, 127);
+	}
+
 	/**
 	 * Get a hash code for a message that allows to test for equality.
 	 * 
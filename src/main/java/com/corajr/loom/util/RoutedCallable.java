@@ -0,0 +1,19 @@
+package com.corajr.loom.util;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A callable that names the output it writes to. When callbacks are run by a
+ * {@link com.corajr.loom.time.CallbackDispatcher}, callables with the same
+ * route are run in order on the same thread, and callables with different
+ * routes never wait for one another.
+ * 
+ * @author corajr
+ */
+public interface RoutedCallable<V> extends Callable<V> {
+	/**
+	 * @return the output (e.g. a MIDI bus wrapper) that this callable writes
+	 *         to
+	 */
+	Object getRoute();
+}
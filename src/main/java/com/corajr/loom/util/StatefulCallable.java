@@ -13,6 +13,20 @@ public abstract class StatefulCallable implements Callable<Void> {
 	}
 
 	public Void call() throws Exception {
+		Callable<?> action = advance();
+		if (action != null)
+			action.call();
+		return null;
+	}
+
+	/**
+	 * Updates the shared state without running any action, so that the state
+	 * transition can happen on the timing thread while the action itself is
+	 * run elsewhere.
+	 * 
+	 * @return the action to run, or null if there is none
+	 */
+	public Callable<?> advance() {
 		lastValue.set(index);
 		return null;
 	}
@@ -5,5 +5,16 @@ import javax.sound.midi.MidiMessage;
 public interface IMidiBus {
 	void sendMessage(MidiMessage message);
 
+	/**
+	 * Sends a message that should take effect at a particular time.
+	 * 
+	 * @param message
+	 *            the message to send
+	 * @param timestampMillis
+	 *            the wall-clock time (as in System.currentTimeMillis()) at
+	 *            which the message is due, or -1 to send it immediately
+	 */
+	void sendMessage(MidiMessage message, long timestampMillis);
+
 	void dispose();
 }
@@ -6,5 +6,18 @@ import oscP5.OscPacket;
 public interface IOscP5 {
 	void send(OscPacket packet, NetAddress addr);
 
+	/**
+	 * Sends a packet that should take effect at a particular time.
+	 * 
+	 * @param packet
+	 *            the packet to send
+	 * @param addr
+	 *            the remote address
+	 * @param timestampMillis
+	 *            the wall-clock time (as in System.currentTimeMillis()) at
+	 *            which the packet is due, or -1 to send it immediately
+	 */
+	void send(OscPacket packet, NetAddress addr, long timestampMillis);
+
 	void dispose();
 }
@@ -2,7 +2,11 @@ package com.corajr.loom.wrappers;
 
 import processing.app.Platform;
 import processing.core.PApplet;
-import javax.sound.midi.MidiMessage;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.sound.midi.*;
 
 import themidibus.MidiBus;
 
@@ -48,6 +52,18 @@ import themidibus.MidiBus;
 public class MidiBusImpl implements IMidiBus {
 	private final MidiBus midiBus;
 
+	/**
+	 * Receivers opened on the MidiBus's output devices for timestamped sends,
+	 * keyed by device name.
+	 */
+	private final ConcurrentMap<String, Receiver> receivers = new ConcurrentHashMap<String, Receiver>();
+	private final ConcurrentMap<String, MidiDevice> devices = new ConcurrentHashMap<String, MidiDevice>();
+
+	/**
+	 * Holds messages for devices that ignore timestamps until they are due.
+	 */
+	private ScheduledExecutorService delayQueue;
+
 	public MidiBusImpl(MidiBus midiBus) {
 		this.midiBus = midiBus;
 	}
@@ -57,8 +73,119 @@ public class MidiBusImpl implements IMidiBus {
 		midiBus.sendMessage(message);
 	}
 
+	/**
+	 * Sends a message ahead of time. Devices that support timestamps (i.e.
+	 * report a microsecond position) receive it immediately with a timestamp
+	 * in their own timebase; other devices receive it from a delay queue when
+	 * it is due.
+	 */
+	@Override
+	public void sendMessage(final MidiMessage message, long timestampMillis) {
+		long delayMillis = timestampMillis - System.currentTimeMillis();
+		if (timestampMillis < 0 || delayMillis <= 0) {
+			sendMessage(message);
+			return;
+		}
+
+		String[] outputs = midiBus.attachedOutputs();
+		MidiDevice[] outputDevices = new MidiDevice[outputs.length];
+		Receiver[] outputReceivers = new Receiver[outputs.length];
+		for (int i = 0; i < outputs.length; i++) {
+			outputDevices[i] = getDevice(outputs[i]);
+			if (outputDevices[i] != null)
+				outputReceivers[i] = getReceiver(outputs[i], outputDevices[i]);
+
+			if (outputReceivers[i] == null) {
+				// fall back to delaying the whole send through the MidiBus
+				getDelayQueue().schedule(new Callable<Void>() {
+					@Override
+					public Void call() {
+						midiBus.sendMessage(message);
+						return null;
+					}
+				}, delayMillis, TimeUnit.MILLISECONDS);
+				return;
+			}
+		}
+
+		for (int i = 0; i < outputs.length; i++) {
+			final Receiver receiver = outputReceivers[i];
+			long position = outputDevices[i].getMicrosecondPosition();
+			if (position >= 0) {
+				receiver.send(message, position + delayMillis * 1000);
+			} else {
+				getDelayQueue().schedule(new Callable<Void>() {
+					@Override
+					public Void call() {
+						receiver.send(message, -1);
+						return null;
+					}
+				}, delayMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private MidiDevice getDevice(String name) {
+		MidiDevice device = devices.get(name);
+		if (device != null)
+			return device;
+
+		for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+			if (!info.getName().equals(name))
+				continue;
+			try {
+				MidiDevice candidate = MidiSystem.getMidiDevice(info);
+				if (candidate.getMaxReceivers() != 0) {
+					devices.putIfAbsent(name, candidate);
+					return devices.get(name);
+				}
+			} catch (MidiUnavailableException e) {
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	private Receiver getReceiver(String name, MidiDevice device) {
+		Receiver receiver = receivers.get(name);
+		if (receiver != null)
+			return receiver;
+
+		try {
+			if (!device.isOpen())
+				device.open();
+			receivers.putIfAbsent(name, device.getReceiver());
+			return receivers.get(name);
+		} catch (MidiUnavailableException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private synchronized ScheduledExecutorService getDelayQueue() {
+		if (delayQueue == null) {
+			delayQueue = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "loom-midi-delay");
+							thread.setDaemon(true);
+							thread.setPriority(Thread.MAX_PRIORITY);
+							return thread;
+						}
+					});
+		}
+		return delayQueue;
+	}
+
 	@Override
 	public void dispose() {
+		synchronized (this) {
+			if (delayQueue != null)
+				delayQueue.shutdownNow();
+		}
+		for (Receiver receiver : receivers.values())
+			receiver.close();
 		midiBus.dispose();
 	}
 }
@@ -16,6 +16,32 @@ public class OscP5Impl implements IOscP5 {
 		oscP5.send(packet, addr);
 	}
 
+	/**
+	 * Sends the packet inside a bundle whose timetag is set to the timestamp,
+	 * so that the receiver can schedule it precisely.
+	 */
+	@Override
+	public void send(OscPacket packet, NetAddress addr, long timestampMillis) {
+		if (timestampMillis < 0) {
+			send(packet, addr);
+			return;
+		}
+
+		OscBundle bundle;
+		if (packet instanceof OscBundle) {
+			bundle = (OscBundle) packet;
+		} else if (packet instanceof OscMessage) {
+			bundle = new OscBundle();
+			bundle.add((OscMessage) packet);
+		} else {
+			send(packet, addr);
+			return;
+		}
+
+		bundle.setTimetag(timestampMillis);
+		oscP5.send(bundle, addr);
+	}
+
 	@Override
 	public void dispose() {
 		oscP5.dispose();
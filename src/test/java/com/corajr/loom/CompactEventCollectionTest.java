@@ -0,0 +1,96 @@
+package com.corajr.loom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.NonRealTimeScheduler;
+
+public class CompactEventCollectionTest {
+	private EventCollection events;
+	private CompactEventCollection frozen;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() {
+		events = EventCollection.fromString("0123401234");
+		events.add(new LEvent(new Interval(2, 4), 0.5));
+		frozen = events.freeze();
+	}
+
+	@Test
+	public void sameEvents() {
+		assertThat(frozen.size(), is(equalTo(events.size())));
+		assertThat(frozen.values(),
+				is(equalTo((List<LEvent>) new ArrayList<LEvent>(events
+						.values()))));
+		assertThat(frozen.getTotalInterval(),
+				is(equalTo(events.getTotalInterval())));
+	}
+
+	@Test
+	public void sameQueryResults() {
+		Random random = new Random(1);
+		for (int i = 0; i < 200; i++) {
+			int start = random.nextInt(500);
+			Interval query = new Interval(new BigFraction(start, 97),
+					new BigFraction(start + 1 + random.nextInt(30), 97));
+			assertThat(frozen.getForInterval(query),
+					is(equalTo(events.getForInterval(query))));
+		}
+	}
+
+	@Test
+	public void sameBoundaries() {
+		for (int i = -1; i < 50; i++) {
+			BigFraction time = new BigFraction(i, 11);
+			assertThat(frozen.getNextBoundary(time),
+					is(equalTo(events.getNextBoundary(time))));
+		}
+	}
+
+	@Test
+	public void keepsParents() {
+		LEvent parent = new LEvent(new Interval(0, 1), 1.0);
+		EventCollection children = EventCollection.fromEvents(new LEvent(
+				new Interval(0, 0.5), 0.0, parent));
+		assertThat(children.freeze().get(0).getParentEvent(),
+				is(sameInstance(parent)));
+	}
+
+	@Test
+	public void frozenPatternPlaysTheSame() {
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(null, scheduler);
+		Pattern pattern = new Pattern(loom, EventCollection.fromString("0123"));
+		pattern.loop();
+		Pattern frozenPattern = new Pattern(loom,
+				EventCollection.fromString("0123")).freeze();
+		frozenPattern.loop();
+		loom.play();
+
+		for (int ms = 0; ms < 2000; ms += 50) {
+			scheduler.setElapsedMillis(ms);
+			assertThat(frozenPattern.getValue(),
+					is(equalTo(pattern.getValue())));
+		}
+	}
+
+	@Test
+	public void inexactEventsCannotBeFrozen() {
+		EventCollection inexact = EventCollection.fromEvents(new LEvent(
+				new Interval(BigFraction.ZERO, new BigFraction(1, 1009)), 0.5));
+		thrown.expect(IllegalArgumentException.class);
+		inexact.freeze();
+	}
+}
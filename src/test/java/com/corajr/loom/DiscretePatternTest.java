@@ -4,6 +4,8 @@ import static org.junit.Assert.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+import java.util.*;
+
 import org.apache.commons.math3.fraction.BigFraction;
 import org.junit.After;
 import org.junit.Before;
@@ -14,8 +16,13 @@ import org.junit.rules.ExpectedException;
 import com.corajr.loom.LEvent;
 import com.corajr.loom.Loom;
 import com.corajr.loom.Pattern;
+import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.transforms.EventRewriter;
+import com.corajr.loom.transforms.LazyLsysEvents;
+import com.corajr.loom.transforms.LsysRewriter;
 import com.corajr.loom.transforms.MatchRewriter;
+import com.corajr.loom.transforms.RewrittenEvents;
 
 public class DiscretePatternTest {
 	private Loom loom;
@@ -120,6 +127,51 @@ public class DiscretePatternTest {
 		assertThat(pattern.getEvents().size(), is(equalTo(2)));
 	}
 
+	@Test
+	public void rewriteLazilyDispatchesOnRuntimeType() {
+		LsysRewriter lsys = new LsysRewriter(3, "A->AB", "B->A");
+		EventRewriter rewriter = lsys;
+		pattern = new Pattern(loom, lsys.makeAxiom("A"));
+		pattern.rewriteLazily(rewriter);
+		assertThat(pattern.getConcretePattern().events,
+				is(instanceOf(LazyLsysEvents.class)));
+
+		Pattern other = new Pattern(loom, EventCollection.fromString("0101"));
+		other.rewriteLazily(new MatchRewriter(1.0));
+		assertThat(other.getConcretePattern().events,
+				is(instanceOf(RewrittenEvents.class)));
+	}
+
+	@Test
+	public void rewriteLazilyWithGeneralRuleIsAView() {
+		com.corajr.loom.transforms.Rule dropB = new com.corajr.loom.transforms.Rule() {
+			@Override
+			public boolean canApply(int index, LEvent event) {
+				return event.getValue() == 1.0;
+			}
+
+			@Override
+			public Collection<LEvent> apply(int index, LEvent event) {
+				return Collections.emptyList();
+			}
+		};
+		ArrayList<com.corajr.loom.transforms.Rule> rules = new ArrayList<com.corajr.loom.transforms.Rule>();
+		rules.add(LsysRewriter.ruleFrom("AB", "A->AB"));
+		rules.add(dropB);
+		LsysRewriter lsys = new LsysRewriter("AB", 1, rules);
+		assertThat(lsys.hasOnlyLsysRules(), is(false));
+
+		pattern = new Pattern(loom, lsys.makeAxiom("ABBA"));
+		pattern.rewriteLazily(lsys);
+		EventQueryable events = pattern.getConcretePattern().events;
+		assertThat(events, is(instanceOf(RewrittenEvents.class)));
+
+		// A becomes AB and B is dropped
+		List<LEvent> rewritten = new ArrayList<LEvent>(
+				events.getForInterval(new Interval(0, 1)));
+		assertThat(rewritten.size(), is(equalTo(4)));
+	}
+
 	@Test
 	public void clonedPatternsAreDistinct() throws CloneNotSupportedException {
 		pattern.extend("0101");
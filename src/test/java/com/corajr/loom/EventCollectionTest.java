@@ -129,4 +129,67 @@ public class EventCollectionTest {
 		events.add(new LEvent(new Interval(99, 100), 0.0));
 		assertThat(events.getTotalInterval(), is(equalTo(new Interval(0, 100))));
 	}
+
+	@Test
+	public void getActiveEventsIncludesLongEventsStartingEarlier() {
+		events = EventCollection.fromEvents(makeArray(1000));
+		events.add(new LEvent(new Interval(1000, 1100), 1.0));
+		events.add(new LEvent(new Interval(1100, 1101), 0.5));
+
+		Interval interval = new Interval(new BigFraction(1050),
+				new BigFraction(1051));
+		Collection<LEvent> results = events.getForInterval(interval);
+		assertThat(results.size(), is(equalTo(1)));
+		assertThat(results.iterator().next().getValue(), is(equalTo(1.0)));
+
+		interval = new Interval(new BigFraction(1001, 2), new BigFraction(
+				1003, 2));
+		results = events.getForInterval(interval);
+		assertThat(results.size(), is(equalTo(2)));
+	}
+
+	@Test
+	public void addAllSortsUnorderedEvents() {
+		events.addAll(Arrays.asList(new LEvent(new Interval(2, 3), 0.5),
+				new LEvent(new Interval(0, 1), 0.0), new LEvent(new Interval(
+						1, 2), 1.0)));
+		assertThat(events.size(), is(equalTo(3)));
+		assertThat(events.getTotalInterval(), is(equalTo(new Interval(0, 3))));
+	}
+
+	@Test
+	public void addAllIsAllOrNothing() {
+		events.add(new LEvent(new Interval(4, 5), 0));
+
+		try {
+			events.addAll(Arrays.asList(new LEvent(new Interval(0, 1), 0),
+					new LEvent(new Interval(3, 5), 0)));
+		} catch (IllegalStateException e) {
+			assertThat(events.size(), is(equalTo(1)));
+			return;
+		}
+		fail("overlap was not detected");
+	}
+
+	@Test
+	public void bulkLoadSortsManyEvents() {
+		int n = 50000;
+		LEvent[] many = new LEvent[n];
+		for (int i = 0; i < n; i++) {
+			many[n - 1 - i] = new LEvent(new Interval(new BigFraction(i, 16),
+					new BigFraction(i + 1, 16)), 0.5);
+		}
+
+		events = EventCollection.fromEvents(many);
+		assertThat(events.size(), is(equalTo(n)));
+		assertThat(events.firstKey(), is(equalTo(BigFraction.ZERO)));
+		assertThat(events.lastKey(), is(equalTo(new BigFraction(n - 1, 16))));
+
+		BigFraction previous = null;
+		for (BigFraction key : events.keySet()) {
+			if (previous != null)
+				assertThat(key, is(greaterThan(previous)));
+			previous = key;
+		}
+	}
 }
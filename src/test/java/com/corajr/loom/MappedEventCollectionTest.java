@@ -0,0 +1,111 @@
+package com.corajr.loom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.corajr.loom.recording.OscScore;
+import com.corajr.loom.time.Interval;
+
+import oscP5.OscBundle;
+
+public class MappedEventCollectionTest {
+	private File file;
+	private PolyphonicEventCollection events;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("events", ".loom");
+
+		// enough events to span several index blocks, some overlapping
+		Random random = new Random(1);
+		events = new PolyphonicEventCollection();
+		for (int i = 0; i < 2000; i++) {
+			BigFraction start = new BigFraction(i, 8);
+			BigFraction end = start.add(new BigFraction(1 + random.nextInt(4),
+					8));
+			events.add(new LEvent(new Interval(start, end), random
+					.nextDouble()));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void sameQueryResults() throws IOException {
+		MappedEventCollection.write(file, events.values());
+		MappedEventCollection mapped = MappedEventCollection.open(file);
+
+		assertThat(mapped.size(), is(equalTo((long) events.size())));
+		assertThat(mapped.getTotalInterval(),
+				is(equalTo(events.getTotalInterval())));
+
+		Random random = new Random(2);
+		for (int i = 0; i < 200; i++) {
+			int start = random.nextInt(3000);
+			Interval query = new Interval(new BigFraction(start, 11),
+					new BigFraction(start + 1 + random.nextInt(30), 11));
+			Collection<LEvent> expected = events.getForInterval(query);
+			assertThat(mapped.getForInterval(query),
+					containsInAnyOrder(expected.toArray(new LEvent[expected
+							.size()])));
+
+			BigFraction time = new BigFraction(start, 11);
+			assertThat(mapped.getNextBoundary(time),
+					is(equalTo(events.getNextBoundary(time))));
+		}
+		mapped.close();
+	}
+
+	@Test
+	public void writeEventCollection() throws IOException {
+		EventCollection collection = EventCollection.fromString("01234");
+		MappedEventCollection.write(file, collection);
+		MappedEventCollection mapped = MappedEventCollection.open(file);
+		assertThat(
+				mapped.getForInterval(new Interval(0, 1)),
+				contains(collection.values().toArray(
+						new LEvent[collection.size()])));
+		mapped.close();
+	}
+
+	@Test
+	public void writeOscScore() throws IOException {
+		OscScore score = new OscScore();
+		score.put(0.0, new OscBundle());
+		score.put(0.25, new OscBundle());
+		score.put(1.0, new OscBundle());
+		MappedEventCollection.writeOscScore(file, score);
+
+		MappedEventCollection mapped = MappedEventCollection.open(file);
+		assertThat(mapped.size(), is(equalTo(3L)));
+		assertThat(mapped.getTotalInterval(),
+				is(equalTo(new Interval(0, 1.25))));
+		mapped.close();
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[64]);
+		out.close();
+
+		thrown.expect(IOException.class);
+		MappedEventCollection.open(file);
+	}
+}
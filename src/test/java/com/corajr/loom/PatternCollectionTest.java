@@ -43,4 +43,70 @@ public class PatternCollectionTest {
 		assertThat(activePatterns.size(), is(equalTo(1)));
 	}
 
+	@Test
+	public void activeMappingsAreCachedUntilTreeChanges() {
+		Loom loom = new Loom(null);
+		Pattern pattern = new Pattern(loom);
+		Pattern pattern2 = new Pattern(loom);
+
+		pattern.extend("1111");
+		pattern2.extend("1111");
+
+		patterns.add(pattern);
+		patterns.add(pattern2);
+
+		PatternCollection activePatterns = patterns
+				.getPatternsWithActiveMappings();
+		assertThat(activePatterns.size(), is(equalTo(0)));
+		assertThat(patterns.getPatternsWithActiveMappings(),
+				is(sameInstance(activePatterns)));
+
+		pattern.asMidiMessage(pattern2);
+
+		activePatterns = patterns.getPatternsWithActiveMappings();
+		assertThat(activePatterns.size(), is(equalTo(1)));
+		assertThat(patterns.getPatternsWithActiveMappings(),
+				is(sameInstance(activePatterns)));
+
+		patterns.remove(pattern);
+		assertThat(patterns.getPatternsWithActiveMappings().size(),
+				is(equalTo(0)));
+	}
+
+	@Test
+	public void otherTreesDoNotInvalidateCache() {
+		Loom loom = new Loom(null);
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("1111");
+		patterns.add(pattern);
+
+		PatternCollection activePatterns = patterns
+				.getPatternsWithActiveMappings();
+
+		Loom otherLoom = new Loom(null);
+		Pattern other = new Pattern(otherLoom);
+		Pattern other2 = new Pattern(otherLoom);
+		other.extend("1111");
+		other2.extend("1111");
+		other.asMidiMessage(other2);
+
+		assertThat(patterns.getPatternsWithActiveMappings(),
+				is(sameInstance(activePatterns)));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void outputMappingsAreReadOnly() {
+		Pattern pattern = new Pattern(null);
+		pattern.extend("1111");
+		pattern.getOutputMappings().put(Pattern.MappingType.FLOAT, null);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void activePatternsAreReadOnly() {
+		Loom loom = new Loom(null);
+		Pattern pattern = new Pattern(loom);
+		patterns.add(pattern);
+
+		patterns.getPatternsWithActiveMappings().add(pattern);
+	}
 }
@@ -3,11 +3,14 @@ package com.corajr.loom;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.math3.fraction.BigFraction;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -17,7 +20,11 @@ import org.junit.rules.ExpectedException;
 import com.corajr.loom.ConcretePattern;
 import com.corajr.loom.Loom;
 import com.corajr.loom.Pattern;
+import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.time.TimeTransform;
+import com.corajr.loom.transforms.LsysRewriter;
+import com.corajr.loom.transforms.RewriteCache;
 import com.corajr.loom.transforms.Transforms;
 import com.corajr.loom.util.CallableOnChange;
 
@@ -447,4 +454,102 @@ public class PatternTransformationsTest {
 		assertThat(noteOns.get(), is(equalTo(5)));
 		assertThat(noteOffs.get(), is(equalTo(4)));
 	}
+
+	@Test
+	public void compiledTimeFollowsAncestors() {
+		Pattern child = new Pattern(loom, 0.5);
+		Pattern middle = new Pattern(loom);
+		Pattern top = new Pattern(loom);
+		top.addChild(middle);
+		middle.addChild(child);
+
+		top.speed(new BigFraction(2));
+		middle.shift(new BigFraction(1, 8));
+		child.speed(new BigFraction(3));
+
+		scheduler.setElapsedMillis(100);
+		Interval stepwise = child.transform(middle.transform(top
+				.transform(loom.getCurrentInterval())));
+		assertThat(child.getCurrentInterval(), is(equalTo(stepwise)));
+		assertThat(child.getTimeTransform(true).getStageCount(),
+				is(equalTo(1)));
+
+		top.loop();
+		middle.reverse();
+		scheduler.setElapsedMillis(700);
+		stepwise = child.transform(middle.transform(top.transform(loom
+				.getCurrentInterval())));
+		assertThat(child.getCurrentInterval(), is(equalTo(stepwise)));
+	}
+
+	@Test
+	public void compiledTimeIgnoresUnrelatedPatterns() {
+		Pattern child = new Pattern(loom, 0.5);
+		Pattern top = new Pattern(loom);
+		top.addChild(child);
+		top.speed(new BigFraction(2));
+		TimeTransform compiled = child.getTimeTransform(true);
+
+		Pattern other = new Pattern(loom, 0.25);
+		other.speed(new BigFraction(3));
+		new Loom(null, new NonRealTimeScheduler()).setPeriod(500);
+
+		assertThat(child.getTimeTransform(true), is(sameInstance(compiled)));
+
+		top.shift(new BigFraction(1, 4));
+		assertThat(child.getTimeTransform(true),
+				is(not(sameInstance(compiled))));
+	}
+
+	@Test
+	public void compiledTimeFollowsNestedMatches() {
+		Pattern slow = new Pattern(loom, 0.5);
+		slow.speed(new BigFraction(1, 2));
+		Pattern fast = new Pattern(loom, 0.5);
+		fast.speed(new BigFraction(4));
+		Pattern inner = new Pattern(loom);
+		inner.setTimeMatch(slow);
+		Pattern outer = new Pattern(loom, 0.5);
+		outer.setTimeMatch(inner);
+
+		scheduler.setElapsedMillis(100);
+		assertThat(outer.getCurrentInterval(),
+				is(equalTo(slow.getCurrentInterval())));
+
+		inner.setTimeMatch(fast);
+		assertThat(outer.getCurrentInterval(),
+				is(equalTo(fast.getCurrentInterval())));
+
+		fast.speed(new BigFraction(2));
+		assertThat(outer.getCurrentInterval(),
+				is(equalTo(fast.getCurrentInterval())));
+	}
+
+	@Test
+	public void rewriteEveryCycleIsCached() {
+		RewriteCache cache = new RewriteCache();
+		LsysRewriter lsys = new LsysRewriter(1, "A->AB", "B->A");
+		lsys.setCache(cache);
+		EventCollection axiom = lsys.makeAxiom("A");
+
+		Pattern first = new Pattern(loom, axiom);
+		first.every(1, new Transforms.Rewrite(lsys));
+		Pattern second = new Pattern(loom, axiom);
+		second.every(1, new Transforms.Rewrite(lsys));
+
+		String[] generations = { "AB", "ABA", "ABAAB" };
+		for (int i = 0; i < generations.length; i++) {
+			scheduler.setElapsedMillis(1000 * (i + 1) + 1);
+			assertThat(lsys.fromEvents(first.getEvents().values()),
+					is(equalTo(generations[i])));
+			assertThat(lsys.fromEvents(second.getEvents().values()),
+					is(equalTo(generations[i])));
+		}
+
+		// each generation was computed once, for whichever pattern got there
+		// first
+		assertThat(cache.getMisses(), is(equalTo(3L)));
+		assertThat(cache.getHits(), is(equalTo(3L)));
+		assertThat(first.getEvents(), is(not(sameInstance(second.getEvents()))));
+	}
 }
@@ -0,0 +1,126 @@
+package com.corajr.loom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.time.Interval;
+
+public class PolyphonicEventCollectionTest {
+	private PolyphonicEventCollection events;
+
+	private final LEvent pedal = new LEvent(new Interval(0, 4), 0.1);
+	private final LEvent first = new LEvent(new Interval(0, 1), 0.5);
+	private final LEvent second = new LEvent(new Interval(1, 2), 0.6);
+	private final LEvent third = new LEvent(new Interval(1, 3), 0.7);
+
+	@Before
+	public void setUp() {
+		events = PolyphonicEventCollection.fromEvents(second, pedal, third,
+				first);
+	}
+
+	@Test
+	public void overlappingEventsCanBeAdded() {
+		events.add(new LEvent(new Interval(0, 4), 0.1));
+		assertThat(events.size(), is(equalTo(5)));
+		assertThat(events.values(),
+				contains(first, pedal, pedal, second, third));
+	}
+
+	@Test
+	public void versionChangesOnWrite() {
+		long version = events.getVersion();
+		events.add(new LEvent(new Interval(0, 4), 0.1));
+		assertThat(events.getVersion(), is(not(equalTo(version))));
+
+		version = events.getVersion();
+		events.remove(new LEvent(new Interval(5, 6), 0.1));
+		assertThat(events.getVersion(), is(equalTo(version)));
+		events.remove(first);
+		assertThat(events.getVersion(), is(not(equalTo(version))));
+	}
+
+	@Test
+	public void stabbingQuery() {
+		Interval instant = new Interval(new BigFraction(3, 2), new BigFraction(
+				151, 100));
+		assertThat(events.getForInterval(instant),
+				contains(pedal, second, third));
+
+		Interval later = new Interval(new BigFraction(5, 2), new BigFraction(3));
+		assertThat(events.getForInterval(later), contains(pedal, third));
+
+		assertThat(events.getForInterval(new Interval(4, 5)),
+				is(empty()));
+	}
+
+	@Test
+	public void matchesEventCollection() {
+		Random random = new Random(1);
+		List<LEvent> all = new ArrayList<LEvent>();
+		PolyphonicEventCollection tree = new PolyphonicEventCollection();
+		for (int i = 0; i < 500; i++) {
+			int start = random.nextInt(1000);
+			LEvent e = new LEvent(new Interval(new BigFraction(start, 10),
+					new BigFraction(start + 1 + random.nextInt(50), 10)),
+					random.nextDouble());
+			all.add(e);
+			tree.add(e);
+		}
+
+		for (int i = 0; i < 200; i++) {
+			int start = random.nextInt(1100);
+			Interval query = new Interval(new BigFraction(start, 10),
+					new BigFraction(start + 1 + random.nextInt(20), 10));
+
+			Set<LEvent> expected = new HashSet<LEvent>();
+			for (LEvent e : all) {
+				if (e.containedBy(query))
+					expected.add(e);
+			}
+			Collection<LEvent> found = tree.getForInterval(query);
+			assertThat(found.size(), is(equalTo(expected.size())));
+			assertThat(new HashSet<LEvent>(found), is(equalTo(expected)));
+		}
+	}
+
+	@Test
+	public void nextBoundary() {
+		assertThat(events.getNextBoundary(BigFraction.ZERO),
+				is(equalTo(BigFraction.ONE)));
+		assertThat(events.getNextBoundary(BigFraction.ONE),
+				is(equalTo(new BigFraction(2))));
+		assertThat(events.getNextBoundary(new BigFraction(2)),
+				is(equalTo(new BigFraction(3))));
+		assertThat(events.getNextBoundary(new BigFraction(3)),
+				is(equalTo(new BigFraction(4))));
+		assertThat(events.getNextBoundary(new BigFraction(4)),
+				is(nullValue()));
+	}
+
+	@Test
+	public void removeAndTotalInterval() {
+		assertThat(events.getTotalInterval(), is(equalTo(new Interval(0, 4))));
+		assertThat(events.remove(pedal), is(true));
+		assertThat(events.remove(pedal), is(false));
+		assertThat(events.getTotalInterval(), is(equalTo(new Interval(0, 3))));
+		assertThat(events.values(), contains(first, second, third));
+	}
+
+	@Test
+	public void chordPattern() {
+		Pattern chord = new Pattern(null, PolyphonicEventCollection.fromEvents(
+				pedal, first));
+		assertThat(chord.isDiscretePattern(), is(true));
+		assertThat(chord.getValueFor(new Interval(0, 0.01), first),
+				is(equalTo(0.5)));
+		assertThat(chord.getValueFor(new Interval(0, 0.01), pedal),
+				is(equalTo(0.1)));
+	}
+}
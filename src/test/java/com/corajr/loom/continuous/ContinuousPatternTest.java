@@ -11,8 +11,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import com.corajr.loom.EventCollection;
+import com.corajr.loom.LEvent;
 import com.corajr.loom.Loom;
 import com.corajr.loom.Pattern;
+import com.corajr.loom.PolyphonicEventCollection;
 import com.corajr.loom.continuous.DelayFunction;
 import com.corajr.loom.continuous.FollowerFunction;
 import com.corajr.loom.continuous.MatchFunction;
@@ -236,4 +239,105 @@ public class ContinuousPatternTest {
 		pattern.rewrite(new MatchRewriter(1.0));
 	}
 
+
+	private static class CountingFunction extends ContinuousFunction {
+		int calls = 0;
+
+		@Override
+		public double call(BigFraction t) {
+			calls++;
+			return 0.5;
+		}
+	}
+
+	@Test
+	public void followersShareOneEvaluation() {
+		CountingFunction counting = new CountingFunction();
+		pattern = new Pattern(loom, counting);
+		Pattern follower = new Pattern(loom, new FollowerFunction(pattern));
+		Pattern threshold = new Pattern(loom, new ThresholdFunction(pattern,
+				0.5));
+		Pattern match = new Pattern(loom, new MatchFunction(pattern, 0.5));
+
+		scheduler.setElapsedMillis(250);
+		Interval now = loom.getCurrentInterval();
+		assertThat(follower.getValueFor(now), is(equalTo(0.5)));
+		assertThat(threshold.getValueFor(now), is(equalTo(1.0)));
+		assertThat(match.getValueFor(now), is(equalTo(1.0)));
+		assertThat(counting.calls, is(equalTo(2))); // start and end, once
+
+		scheduler.setElapsedMillis(500);
+		follower.getValue();
+		assertThat(counting.calls, is(equalTo(4)));
+	}
+
+	@Test
+	public void memoCanBeTurnedOff() {
+		CountingFunction counting = new CountingFunction();
+		pattern = new Pattern(loom, counting);
+		pattern.setMemoized(false);
+
+		scheduler.setElapsedMillis(250);
+		pattern.getValue();
+		pattern.getValue();
+		assertThat(counting.calls, is(equalTo(4)));
+	}
+
+	@Test
+	public void memoFollowsChangedEvents() {
+		EventCollection events = EventCollection.fromString("0101");
+		pattern = new Pattern(loom, events);
+
+		scheduler.setElapsedMillis(100);
+		assertThat(pattern.getValue(), is(equalTo(0.0)));
+		events.put(BigFraction.ZERO,
+				new LEvent(new Interval(0.0, 0.25), 1.0));
+		assertThat(pattern.getValue(), is(equalTo(1.0)));
+	}
+
+	@Test
+	public void memoFollowsChangedPolyphonicEvents() {
+		LEvent low = new LEvent(new Interval(0, 1), 0.0);
+		PolyphonicEventCollection events = PolyphonicEventCollection
+				.fromEvents(low);
+		pattern = new Pattern(loom, events);
+
+		scheduler.setElapsedMillis(100);
+		assertThat(pattern.getValue(), is(equalTo(0.0)));
+		events.remove(low);
+		events.add(new LEvent(new Interval(0, 1), 1.0));
+		assertThat(pattern.getValue(), is(equalTo(1.0)));
+	}
+
+	@Test
+	public void triggerIsNotMemoized() {
+		TriggerFunction trigger = new TriggerFunction();
+		assertThat(trigger.isDeterministic(), is(false));
+
+		pattern = new Pattern(loom, trigger);
+		scheduler.setElapsedMillis(100);
+		trigger.fire();
+		assertThat(pattern.getValue(), is(equalTo(1.0)));
+		assertThat(pattern.getValue(), is(equalTo(0.0)));
+	}
+
+	@Test
+	public void doublePathMatchesFractions() {
+		SineFunction sine = new SineFunction();
+		assertThat(sine.usesDoubles(), is(true));
+
+		Interval[] intervals = { Interval.fromTicks(0, 1000),
+				new Interval(new BigFraction(1, 7), new BigFraction(2, 7)),
+				new Interval(new BigFraction(86400), new BigFraction(86401)) };
+		for (Interval i : intervals) {
+			double fractional = (sine.call(i.getStart()) + sine.call(i
+					.getEnd())) / 2.0;
+			assertThat(sine.call(i), is(closeTo(fractional, 1e-9)));
+		}
+
+		CountingFunction counting = new CountingFunction();
+		assertThat(counting.usesDoubles(), is(false));
+		assertThat(counting.call(0.25, 0.5), is(equalTo(0.5)));
+		assertThat(counting.calls, is(equalTo(2)));
+	}
 }
@@ -0,0 +1,83 @@
+package com.corajr.loom.continuous;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Test;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.Pattern;
+import com.corajr.loom.time.NonRealTimeScheduler;
+
+public class WavetableFunctionTest {
+	@Test
+	public void sineMatchesSineFunction() {
+		WavetableFunction table = WavetableFunction.sine();
+		SineFunction sine = new SineFunction();
+		for (int i = -100; i <= 100; i++) {
+			double t = i / 37.0;
+			assertThat(table.call(t), is(closeTo(sine.call(t), 1e-5)));
+		}
+	}
+
+	@Test
+	public void shapes() {
+		WavetableFunction triangle = WavetableFunction.triangle();
+		assertThat(triangle.call(0.0), is(closeTo(0.0, 1e-9)));
+		assertThat(triangle.call(0.25), is(closeTo(0.5, 1e-9)));
+		assertThat(triangle.call(0.5), is(closeTo(1.0, 1e-9)));
+		assertThat(triangle.call(1.75), is(closeTo(0.5, 1e-9)));
+
+		WavetableFunction saw = WavetableFunction.saw();
+		assertThat(saw.call(0.0), is(closeTo(0.0, 1e-9)));
+		assertThat(saw.call(0.5), is(closeTo(0.5, 1e-3)));
+		assertThat(saw.call(0.999), is(closeTo(1.0, 1e-3)));
+
+		WavetableFunction square = WavetableFunction.square();
+		assertThat(square.call(0.25), is(equalTo(1.0)));
+		assertThat(square.call(0.75), is(equalTo(0.0)));
+
+		WavetableFunction pulse = WavetableFunction.pulse(0.125);
+		assertThat(pulse.call(0.1), is(equalTo(1.0)));
+		assertThat(pulse.call(0.2), is(equalTo(0.0)));
+	}
+
+	@Test
+	public void noiseIsSmoothAndRepeatable() {
+		WavetableFunction noise = WavetableFunction.noise(42);
+		WavetableFunction same = WavetableFunction.noise(42);
+
+		double previous = noise.call(0.0);
+		for (int i = 0; i <= 1000; i++) {
+			double t = i / 1000.0;
+			double value = noise.call(t);
+			assertThat(value, is(both(greaterThanOrEqualTo(0.0)).and(
+					lessThanOrEqualTo(1.0))));
+			assertThat(Math.abs(value - previous), is(lessThan(0.1)));
+			assertThat(same.call(t), is(equalTo(value)));
+			assertThat(noise.call(t + 3), is(closeTo(value, 1e-9)));
+			previous = value;
+		}
+	}
+
+	@Test
+	public void tableSizeIsConfigurable() {
+		WavetableFunction small = WavetableFunction.sine(8);
+		assertThat(small.getSize(), is(equalTo(8)));
+		assertThat(small.call(0.25), is(closeTo(1.0, 1e-9)));
+		assertThat(small.call(new BigFraction(1, 16)),
+				is(closeTo((0.5 + (Math.sqrt(0.5) + 1.0) / 2.0) / 2.0, 1e-9)));
+	}
+
+	@Test
+	public void drivesPattern() {
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(null, scheduler);
+		loom.play();
+
+		Pattern lfo = new Pattern(loom, WavetableFunction.triangle());
+		scheduler.setElapsedMillis(500);
+		assertThat(lfo.getValue(), is(closeTo(1.0, 1e-2)));
+	}
+}
@@ -0,0 +1,132 @@
+package com.corajr.loom.generators;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Test;
+
+import com.corajr.loom.*;
+import com.corajr.loom.time.Interval;
+
+public class StepGeneratorTest {
+	private static String hits(StepGenerator generator) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < generator.getSteps(); i++) {
+			sb.append(generator.hitsAt(i));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void euclidean() {
+		assertThat(hits(new Euclidean(3, 8)), is(equalTo("10010010")));
+		assertThat(hits(new Euclidean(4, 16)),
+				is(equalTo("1000100010001000")));
+		assertThat(hits(new Euclidean(5, 8)), is(equalTo("10101101")));
+		assertThat(hits(new Euclidean(3, 8, 1)), is(equalTo("00100101")));
+		assertThat(hits(new Euclidean(0, 4)), is(equalTo("0000")));
+	}
+
+	@Test
+	public void euclideanEvents() {
+		Euclidean tresillo = new Euclidean(3, 8);
+		List<LEvent> events = tresillo.getPeriodEvents();
+		assertThat(events, contains(new LEvent(new Interval(0.0, 0.125), 1.0),
+				new LEvent(new Interval(0.375, 0.5), 1.0), new LEvent(
+						new Interval(0.75, 0.875), 1.0)));
+	}
+
+	@Test
+	public void queryRepeatsForever() {
+		Euclidean tresillo = new Euclidean(3, 8);
+		BigFraction offset = new BigFraction(1000000);
+
+		Collection<LEvent> events = tresillo.getForInterval(new Interval(
+				offset, offset.add(BigFraction.ONE_HALF)));
+		assertThat(events, contains(new LEvent(new Interval(offset, offset
+				.add(new BigFraction(1, 8))), 1.0), new LEvent(new Interval(
+				offset.add(new BigFraction(3, 8)), offset.add(BigFraction.ONE_HALF)),
+				1.0)));
+
+		assertThat(tresillo.getForInterval(new Interval(-1.0, 0.0)).size(),
+				is(equalTo(4)));
+	}
+
+	@Test
+	public void queryMatchesEventCollection() {
+		Ratchet ratchet = new Ratchet(1, 0, 3, 2);
+		EventCollection stored = new EventCollection();
+		for (int i = 0; i < 5; i++) {
+			stored.addWithOffset(new BigFraction(i), ratchet.getPeriodEvents());
+		}
+
+		Random random = new Random(20);
+		for (int i = 0; i < 100; i++) {
+			BigFraction start = new BigFraction(random.nextInt(96), 32);
+			BigFraction end = start.add(new BigFraction(
+					1 + random.nextInt(32), 24));
+			Interval query = new Interval(start, end);
+			assertThat(new ArrayList<LEvent>(ratchet.getForInterval(query)),
+					is(equalTo(new ArrayList<LEvent>(stored
+							.getForInterval(query)))));
+		}
+	}
+
+	@Test
+	public void nextBoundary() {
+		Euclidean tresillo = new Euclidean(3, 8);
+		assertThat(tresillo.getNextBoundary(BigFraction.ZERO),
+				is(equalTo(new BigFraction(1, 8))));
+		assertThat(tresillo.getNextBoundary(new BigFraction(1, 8)),
+				is(equalTo(new BigFraction(3, 8))));
+		assertThat(tresillo.getNextBoundary(new BigFraction(7, 8)),
+				is(equalTo(BigFraction.ONE)));
+		assertThat(new Euclidean(0, 4).getNextBoundary(BigFraction.ZERO),
+				is(nullValue()));
+
+		Ratchet ratchet = new Ratchet(1, 3);
+		assertThat(ratchet.getNextBoundary(new BigFraction(2, 3)),
+				is(equalTo(new BigFraction(5, 6))));
+	}
+
+	@Test
+	public void subdivisionValues() {
+		Subdivision subdivision = new Subdivision(4, BigFraction.ONE, 1.0, 0.5);
+		List<LEvent> events = subdivision.getPeriodEvents();
+		assertThat(events.size(), is(equalTo(4)));
+		assertThat(events.get(2).getValue(), is(equalTo(1.0)));
+		assertThat(events.get(3).getValue(), is(equalTo(0.5)));
+	}
+
+	@Test
+	public void ratchetDecays() {
+		Ratchet ratchet = new Ratchet(BigFraction.ONE, 0.5, 0, 3);
+		List<LEvent> events = ratchet.getPeriodEvents();
+		assertThat(events.size(), is(equalTo(3)));
+		assertThat(events.get(0).getInterval(), is(equalTo(new Interval(
+				new BigFraction(1, 2), new BigFraction(2, 3)))));
+		assertThat(events.get(2).getValue(), is(equalTo(0.25)));
+	}
+
+	@Test
+	public void polymetric() {
+		Polymetric threeAgainstFour = Polymetric.steps(
+				new BigFraction(1, 4), 3, 4);
+		Collection<LEvent> events = threeAgainstFour.getForInterval(new Interval(
+				new BigFraction(3, 4), new BigFraction(7, 8)));
+
+		List<Double> values = new ArrayList<Double>();
+		for (LEvent e : events) {
+			values.add(e.getValue());
+		}
+		// the three-step layer starts again; the four-step layer does not
+		assertThat(values, containsInAnyOrder(1.0, 0.5));
+
+		assertThat(threeAgainstFour.getNextBoundary(new BigFraction(1, 8)),
+				is(equalTo(new BigFraction(1, 4))));
+	}
+}
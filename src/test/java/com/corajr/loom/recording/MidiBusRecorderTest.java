@@ -13,8 +13,11 @@ import org.junit.Test;
 
 import com.corajr.loom.Loom;
 import com.corajr.loom.Pattern;
+import com.corajr.loom.PolyphonicEventCollection;
 import com.corajr.loom.TestDataMockPApplet;
+import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.util.AbcTools;
 import com.corajr.loom.util.MidiTools;
 
 import javax.sound.midi.*;
@@ -57,4 +60,21 @@ public class MidiBusRecorderTest {
 		List<MidiEvent> events = MidiTools.readFile(midiFile);
 		assertThat(events.size(), is(equalTo(10)));
 	}
+
+	@Test
+	public void recordChords() {
+		Pattern chords = AbcTools.fromString(loom, "[CEG]4[DFA]4");
+		chords.loop();
+		chords.asMidiMessage(chords);
+
+		scheduler.setElapsedMillis(1001);
+
+		loom.dispose();
+
+		PolyphonicEventCollection notes = MidiTools.eventsFromFile(midiFile);
+		// two chords of three notes, twice per second
+		assertThat(notes.size(), is(equalTo(12)));
+		assertThat(notes.getForInterval(new Interval(0, 0.01)).size(),
+				is(equalTo(3)));
+	}
 }
@@ -0,0 +1,140 @@
+package com.corajr.loom.time;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.Pattern;
+import com.corajr.loom.util.RoutedCallable;
+
+public class CallbackDispatcherTest {
+	private CallbackDispatcher dispatcher;
+
+	@Before
+	public void setUp() {
+		dispatcher = new CallbackDispatcher(5) {
+			@Override
+			protected void overrun(Object route, Callable<?> callback,
+					long elapsedNanos) {
+				// keep test output quiet
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		dispatcher.shutdown();
+	}
+
+	private static RoutedCallable<Void> routed(final Object route,
+			final Callable<Void> inner) {
+		return new RoutedCallable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				return inner.call();
+			}
+
+			@Override
+			public Object getRoute() {
+				return route;
+			}
+		};
+	}
+
+	@Test
+	public void slowCallbacksDoNotBlockOtherRoutes() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch midiSent = new CountDownLatch(1);
+
+		dispatcher.dispatch(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				release.await();
+				Thread.sleep(20);
+				return null;
+			}
+		}, -1);
+		dispatcher.dispatch(routed("midi", new Callable<Void>() {
+			@Override
+			public Void call() {
+				midiSent.countDown();
+				return null;
+			}
+		}), -1);
+
+		assertThat(midiSent.await(1, TimeUnit.SECONDS), is(true));
+		release.countDown();
+
+		dispatcher.shutdown();
+		assertThat(dispatcher.awaitTermination(1000), is(true));
+		assertThat(dispatcher.getOverrunCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void callbacksOnARouteKeepTheirOrderAndTarget() throws Exception {
+		final List<Long> targets = Collections
+				.synchronizedList(new ArrayList<Long>());
+		final Scheduler scheduler = new NonRealTimeScheduler();
+
+		for (long i = 0; i < 100; i++) {
+			dispatcher.dispatch(routed("osc", new Callable<Void>() {
+				@Override
+				public Void call() {
+					targets.add(scheduler.getTargetMillis());
+					return null;
+				}
+			}), i);
+		}
+
+		dispatcher.shutdown();
+		assertThat(dispatcher.awaitTermination(1000), is(true));
+
+		assertThat(targets.size(), is(equalTo(100)));
+		for (int i = 0; i < 100; i++) {
+			assertThat(targets.get(i), is(equalTo((long) i)));
+		}
+	}
+
+	private static long countOnsets(CallbackDispatcher dispatcher)
+			throws InterruptedException {
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(null, scheduler);
+		loom.setDispatcher(dispatcher);
+
+		final AtomicLong onsets = new AtomicLong();
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("0101");
+		pattern.loop();
+		pattern.onOnset(new Callable<Void>() {
+			@Override
+			public Void call() {
+				onsets.incrementAndGet();
+				return null;
+			}
+		});
+
+		loom.play();
+		scheduler.setElapsedMillis(10000);
+
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+			assertThat(dispatcher.awaitTermination(1000), is(true));
+		}
+		return onsets.get();
+	}
+
+	@Test
+	public void dispatchedOnsetsMatchInlineOnsets() throws Exception {
+		long inline = countOnsets(null);
+		assertThat(inline, is(greaterThan(0L)));
+		assertThat(countOnsets(dispatcher), is(equalTo(inline)));
+	}
+}
@@ -0,0 +1,43 @@
+package com.corajr.loom.time;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.corajr.loom.time.Clock;
+
+public class ClockTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void waitsUntilDeadline() throws InterruptedException {
+		Clock clock = new Clock();
+		for (int i = 0; i < 20; i++) {
+			long deadline = clock.nanoTime() + 2 * Clock.NANOS_PER_MILLI;
+			clock.waitUntil(deadline);
+			assertThat(clock.nanoTime(), is(greaterThanOrEqualTo(deadline)));
+		}
+	}
+
+	@Test
+	public void convertsToWallClockTime() {
+		Clock clock = new Clock();
+		long millis = clock.toMillis(clock.nanoTime());
+		assertThat((double) millis,
+				is(closeTo(System.currentTimeMillis(), 50)));
+	}
+
+	@Test
+	public void waitingIsInterruptible() throws InterruptedException {
+		Clock clock = new Clock();
+		Thread.currentThread().interrupt();
+
+		thrown.expect(InterruptedException.class);
+		clock.waitUntil(clock.nanoTime() + 1000 * Clock.NANOS_PER_MILLI);
+	}
+}
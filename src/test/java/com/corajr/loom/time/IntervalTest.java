@@ -4,8 +4,12 @@ import static org.junit.Assert.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+import java.util.Random;
+
+import org.apache.commons.math3.fraction.BigFraction;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -102,4 +106,98 @@ public class IntervalTest {
 		zeroToOneAndAHalf.modulo(interval);
 	}
 
+
+	/**
+	 * The shifting that {@link Interval#modulo(Interval)} used to do one loop
+	 * length at a time.
+	 */
+	private static Interval shiftInto(Interval i, Interval other) {
+		BigFraction size = other.getSize();
+		while (i.getStart().compareTo(other.getStart()) < 0)
+			i = i.add(size);
+		while (i.getEnd().compareTo(other.getEnd()) > 0)
+			i = i.subtract(size);
+		return i;
+	}
+
+	@Test
+	public void moduloMatchesShifting() {
+		Random random = new Random(22);
+		Interval[] loops = { new Interval(0, 1),
+				new Interval(new BigFraction(1, 3), new BigFraction(7, 4)),
+				new Interval(new BigFraction(-2, 7), new BigFraction(1, 11)) };
+
+		for (Interval loop : loops) {
+			for (int i = 0; i < 200; i++) {
+				BigFraction start = new BigFraction(random.nextInt(4000) - 2000,
+						1 + random.nextInt(30));
+				BigFraction size = loop.getSize().multiply(
+						new BigFraction(1 + random.nextInt(100), 100));
+				Interval query = new Interval(start, start.add(size));
+
+				assertThat(query.modulo(loop),
+						is(equalTo(shiftInto(query, loop))));
+			}
+		}
+	}
+
+	@Test
+	public void moduloFarFromLoop() {
+		BigFraction day = new BigFraction(24 * 60 * 60 * 2); // 2 cycles/sec
+		Interval query = new Interval(day.add(new BigFraction(1, 4)),
+				day.add(BigFraction.ONE_HALF));
+		assertThat(query.modulo(interval), is(equalTo(new Interval(0.25, 0.5))));
+		Interval before = new Interval(day.negate().add(BigFraction.ONE_HALF),
+				day.negate().add(new BigFraction(3, 4)));
+		assertThat(before.modulo(interval), is(equalTo(new Interval(0.5, 0.75))));
+
+		BigFraction odd = new BigFraction(1, 1000003);
+		Interval inexact = new Interval(day.add(odd), day.add(odd.multiply(2)));
+		assertThat(inexact.modulo(interval), is(equalTo(new Interval(odd, odd
+				.multiply(2)))));
+	}
+
+	@Test
+	public void multiplyModFarFromLoop() {
+		BigFraction day = new BigFraction(172800);
+		Interval query = new Interval(day.add(new BigFraction(1, 4)),
+				day.add(BigFraction.ONE_HALF));
+		assertThat(query.multiplyMod(new BigFraction(-1), interval),
+				is(equalTo(new Interval(0.5, 0.75))));
+	}
+
+	/**
+	 * Times the modulo of a one-tick query into a one-cycle loop at the start
+	 * of playback and after each day, for three days at 2 cycles per second.
+	 * The cost should not grow with the time elapsed.
+	 */
+	@Ignore
+	@Test
+	public void moduloBenchmark() {
+		int iterations = 200000;
+		BigFraction tick = new BigFraction(1, 1000);
+		for (int day = 0; day <= 3; day++) {
+			BigFraction elapsed = new BigFraction(day * 24 * 60 * 60 * 2);
+			Interval query = new Interval(elapsed, elapsed.add(tick));
+			Interval inexact = new Interval(elapsed, elapsed.add(new BigFraction(
+					1, 1000003)));
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				query.modulo(interval);
+			}
+			long exactNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				inexact.modulo(interval);
+			}
+			long inexactNanos = System.nanoTime() - start;
+
+			System.out.printf(
+					"day %d: %.1f ns/modulo (ticks), %.1f ns/modulo (fractions)%n",
+					day, (double) exactNanos / iterations, (double) inexactNanos
+							/ iterations);
+		}
+	}
 }
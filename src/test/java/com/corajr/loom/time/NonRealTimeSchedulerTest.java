@@ -3,7 +3,10 @@ package com.corajr.loom.time;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -57,4 +60,44 @@ public class NonRealTimeSchedulerTest {
 		assertThat(totalCount.get(), is(equalTo(4)));
 	}
 
+	private List<Long> recordOnsets(boolean fastForward,
+			final AtomicInteger updates) {
+		final NonRealTimeScheduler counting = new NonRealTimeScheduler() {
+			@Override
+			public void update() {
+				updates.incrementAndGet();
+				super.update();
+			}
+		};
+		counting.setFastForward(fastForward);
+		Loom loom = new Loom(null, counting);
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("0102");
+		pattern.loop();
+
+		final List<Long> onsets = new ArrayList<Long>();
+		pattern.onOnset(new Callable<Void>() {
+			public Void call() {
+				onsets.add(counting.getElapsedMillis());
+				return null;
+			}
+		});
+
+		loom.play();
+		counting.setElapsedMillis(10000);
+		return onsets;
+	}
+
+	@Test
+	public void fastForwardSkipsToEventBoundaries() {
+		AtomicInteger slowUpdates = new AtomicInteger();
+		AtomicInteger fastUpdates = new AtomicInteger();
+
+		List<Long> slow = recordOnsets(false, slowUpdates);
+		List<Long> fast = recordOnsets(true, fastUpdates);
+
+		assertThat(fast, is(equalTo(slow)));
+		assertThat(fast.size(), is(equalTo(41)));
+		assertThat(fastUpdates.get(), is(lessThan(slowUpdates.get() / 10)));
+	}
 }
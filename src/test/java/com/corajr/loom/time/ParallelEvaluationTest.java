@@ -0,0 +1,98 @@
+package com.corajr.loom.time;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.Pattern;
+
+public class ParallelEvaluationTest {
+
+	private NonRealTimeScheduler makeScheduler(int nPatterns,
+			final List<Integer> firings) {
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		scheduler.setFastForward(false);
+		Loom loom = new Loom(null, scheduler);
+
+		for (int i = 0; i < nPatterns; i++) {
+			final int index = i;
+			Pattern pattern = new Pattern(loom);
+			pattern.extend(Integer.toHexString(i % 16) + "0"
+					+ Integer.toHexString((i * 7) % 16) + "F");
+			pattern.loop();
+			pattern.speed(1 + (i % 3));
+			pattern.onOnset(new Callable<Void>() {
+				@Override
+				public Void call() {
+					if (firings != null)
+						firings.add(index);
+					return null;
+				}
+			});
+		}
+
+		loom.play();
+		return scheduler;
+	}
+
+	@Test
+	public void callbacksFireInSerialOrder() {
+		List<Integer> serial = new ArrayList<Integer>();
+		makeScheduler(50, serial).setElapsedMillis(2000);
+
+		List<Integer> parallel = new ArrayList<Integer>();
+		NonRealTimeScheduler scheduler = makeScheduler(50, parallel);
+		scheduler.setParallelism(4);
+		scheduler.setElapsedMillis(2000);
+		scheduler.setParallelism(1);
+
+		assertThat(serial.size(), is(greaterThan(0)));
+		assertThat(parallel, is(equalTo(serial)));
+	}
+
+	@Test
+	public void disposeShutsDownPool() {
+		List<Integer> firings = new ArrayList<Integer>();
+		NonRealTimeScheduler scheduler = makeScheduler(50, firings);
+		scheduler.setParallelism(4);
+		scheduler.dispose();
+
+		assertThat(scheduler.getParallelism(), is(equalTo(1)));
+		scheduler.setElapsedMillis(2000);
+		assertThat(firings.size(), is(greaterThan(0)));
+	}
+
+	/**
+	 * Prints the average time per tick for 400 patterns at each level of
+	 * parallelism up to the number of available cores.
+	 */
+	@Ignore
+	@Test
+	public void scalingBenchmark() {
+		int nPatterns = 400;
+		int millis = 5000;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+			NonRealTimeScheduler scheduler = makeScheduler(nPatterns, null);
+			scheduler.setParallelism(parallelism);
+
+			scheduler.setElapsedMillis(500); // warm up
+
+			long start = System.nanoTime();
+			scheduler.setElapsedMillis(500 + millis);
+			long elapsed = System.nanoTime() - start;
+
+			scheduler.setParallelism(1);
+
+			System.out.format("parallelism %2d: %8.1f us/tick%n", parallelism,
+					elapsed / 1000.0 / millis);
+		}
+	}
+}
@@ -3,12 +3,19 @@ package com.corajr.loom.time;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -154,6 +161,139 @@ public class RealTimeSchedulerTest {
 		relativeTimings(10);
 	}
 
+	/**
+	 * A clock that jumps straight to each deadline instead of waiting, and
+	 * stops the timing thread once it passes the end. It holds its reading at
+	 * zero until released, so that nothing is evaluated before playback has
+	 * started.
+	 */
+	static class SimulatedClock extends Clock {
+		private final long endNanos;
+		private final CountDownLatch released = new CountDownLatch(1);
+		private final CountDownLatch finished = new CountDownLatch(1);
+		private volatile long nanos = 0;
+
+		SimulatedClock(long endMillis) {
+			this.endNanos = endMillis * NANOS_PER_MILLI;
+		}
+
+		@Override
+		public long nanoTime() {
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return nanos;
+		}
+
+		@Override
+		public long toMillis(long nanos) {
+			return nanos / NANOS_PER_MILLI;
+		}
+
+		@Override
+		public void waitUntil(long deadlineNanos) throws InterruptedException {
+			if (deadlineNanos > endNanos) {
+				finished.countDown();
+				throw new InterruptedException();
+			}
+			if (deadlineNanos > nanos)
+				nanos = deadlineNanos;
+		}
+
+		void release() {
+			released.countDown();
+		}
+
+		boolean awaitFinished(long timeoutMillis) throws InterruptedException {
+			return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Test
+	public void lookaheadSendsEarlyWithTargetTime() throws InterruptedException {
+		final long lookahead = 100;
+		final SimulatedClock clock = new SimulatedClock(1000);
+		RealTimeScheduler lookingAhead = new RealTimeScheduler(clock);
+		lookingAhead.setLookahead(lookahead);
+		loom = new Loom(null, lookingAhead);
+		testPattern = new Pattern(loom);
+		testPattern.extend(0, 1, 0, 1, 0, 1, 0, 1, 0, 1);
+		testPattern.loop();
+
+		final ConcurrentLinkedQueue<long[]> sent = new ConcurrentLinkedQueue<long[]>();
+		StatefulCallable[] ops = CallableOnChange
+				.fromCallables(new Callable<Void>() {
+					@Override
+					public Void call() {
+						sent.add(new long[] { loom.getTargetMillis(),
+								clock.toMillis(clock.nanoTime()) });
+						return null;
+					}
+				});
+		testPattern.asStatefulCallable(ops);
+
+		loom.play();
+		clock.release();
+		assertThat(clock.awaitFinished(5000), is(true));
+		loom.stop();
+
+		assertThat(sent.size(), is(greaterThanOrEqualTo(5)));
+		for (long[] message : sent) {
+			long target = message[0];
+			long sentAt = message[1];
+			// until the lookahead has filled, events are sent as soon as
+			// playback starts
+			assertThat(sentAt, is(equalTo(Math.max(0, target - lookahead))));
+		}
+	}
+
+	@Test
+	public void eventDrivenWakeupsSkipIdleTime() {
+		final AtomicInteger updates = new AtomicInteger();
+		RealTimeScheduler eventDriven = new RealTimeScheduler() {
+			@Override
+			public void updateFor(Interval interval) {
+				updates.incrementAndGet();
+				super.updateFor(interval);
+			}
+		};
+		eventDriven.setEventDriven(true);
+		loom = new Loom(null, eventDriven);
+		testPattern = new Pattern(loom);
+		testPattern.extend(0, 1, 0, 1, 0, 1, 0, 1, 0, 1);
+		testPattern.loop();
+
+		final ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<Long>();
+		preparePattern(queue, testPattern);
+
+		loom.play();
+		try {
+			Thread.sleep(1000);
+		} catch (InterruptedException e) {
+		}
+		loom.stop();
+
+		assertThat(queue.size(), is(equalTo(5)));
+		assertThat(updates.get(), is(lessThan(100)));
+	}
+
+	@Test
+	public void jitterStatisticsAreCollected() {
+		loom.play();
+		try {
+			Thread.sleep(200);
+		} catch (InterruptedException e) {
+		}
+		loom.stop();
+
+		StatisticalSummary jitter = ((RealTimeScheduler) scheduler)
+				.getJitterStatistics();
+		assertThat(jitter.getN(), is(greaterThan(0L)));
+		assertThat(jitter.getMin(), is(greaterThanOrEqualTo(0.0)));
+	}
+
 	@Test
 	public void throwExceptionWhenStopped() {
 		thrown.expect(IllegalStateException.class);
@@ -0,0 +1,168 @@
+package com.corajr.loom.time;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.Pattern;
+import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.time.TempoMap;
+
+public class TempoMapTest {
+	private NonRealTimeScheduler scheduler;
+	private Loom loom;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() {
+		scheduler = new NonRealTimeScheduler();
+		loom = new Loom(null, scheduler);
+		loom.play();
+	}
+
+	@Test
+	public void constantPeriod() {
+		TempoMap map = new TempoMap(1000);
+		assertThat(map.toCycles(250), is(equalTo(new BigFraction(1, 4))));
+		assertThat(map.toMillis(new BigFraction(3, 2)), is(equalTo(1500.0)));
+		assertThat(map.getPeriodAt(12345), is(equalTo(1000L)));
+	}
+
+	@Test
+	public void setPeriodKeepsPosition() {
+		scheduler.setElapsedMillis(500);
+		assertThat(loom.getNow(), is(equalTo(new BigFraction(1, 2))));
+
+		loom.setPeriod(500);
+		assertThat(loom.getNow(), is(equalTo(new BigFraction(1, 2))));
+		assertThat(loom.getCurrentInterval().isTickExact(), is(true));
+
+		scheduler.setElapsedMillis(750);
+		assertThat(loom.getNow(), is(equalTo(BigFraction.ONE)));
+		assertThat(loom.getPeriod(), is(equalTo(500L)));
+		assertThat(loom.toMillis(new BigFraction(2)), is(equalTo(1250.0)));
+	}
+
+	@Test
+	public void scheduledChanges() {
+		loom.getTempoMap().setPeriodAt(BigFraction.ONE, 500)
+				.setPeriodAt(new BigFraction(3), 2000);
+
+		assertThat(loom.toMillis(new BigFraction(2)), is(equalTo(1500.0)));
+		assertThat(loom.toMillis(new BigFraction(4)), is(equalTo(4000.0)));
+
+		scheduler.setElapsedMillis(1250);
+		assertThat(loom.getNow(), is(equalTo(new BigFraction(3, 2))));
+		scheduler.setElapsedMillis(3000);
+		assertThat(loom.getNow(), is(equalTo(new BigFraction(7, 2))));
+	}
+
+	@Test
+	public void rampIsContinuous() {
+		TempoMap map = new TempoMap(1000);
+		map.rampPeriod(BigFraction.ONE, new BigFraction(2), 500);
+
+		// the average tempo over the ramp is 1.5 cycles per second
+		double rampEnd = 1000 + 1000 / 1.5;
+		assertThat(map.toMillis(new BigFraction(2)), is(closeTo(rampEnd, 1e-6)));
+		assertThat(map.toMillis(new BigFraction(3)),
+				is(closeTo(rampEnd + 500, 1e-6)));
+
+		double previous = 0;
+		for (long ms = 1; ms < 3000; ms++) {
+			double cycles = map.toCycles(ms).doubleValue();
+			double step = cycles - previous;
+			assertThat(step, is(greaterThan(0.0009)));
+			assertThat(step, is(lessThan(0.0021)));
+			assertThat(map.toMillis(map.toCycles(ms)), is(closeTo(ms, 1e-3)));
+			previous = cycles;
+		}
+
+		assertThat(map.getPeriodAt(1000), is(equalTo(1000L)));
+		assertThat(map.getPeriodAt(3000), is(equalTo(500L)));
+	}
+
+	@Test
+	public void setBPMBeforePlaybackKeepsScheduledChanges() {
+		loom.getTempoMap().rampPeriod(BigFraction.ONE, new BigFraction(2), 250)
+				.setPeriodAt(new BigFraction(3), 1000);
+		loom.setBPM(480); // 500 ms per cycle
+
+		assertThat(loom.getPeriod(), is(equalTo(500L)));
+		assertThat(loom.toMillis(BigFraction.ONE), is(closeTo(500.0, 1e-6)));
+
+		// the ramp now goes from 2 to 4 cycles per second, averaging 3
+		double rampEnd = 500 + 1000 / 3.0;
+		assertThat(loom.toMillis(new BigFraction(2)), is(closeTo(rampEnd, 1e-6)));
+		assertThat(loom.toMillis(new BigFraction(3)),
+				is(closeTo(rampEnd + 250, 1e-6)));
+		assertThat(loom.toMillis(new BigFraction(4)),
+				is(closeTo(rampEnd + 1250, 1e-6)));
+	}
+
+	@Test
+	public void setBPMDuringPlaybackKeepsScheduledChanges() {
+		loom.getTempoMap().setPeriodAt(new BigFraction(2), 1000)
+				.rampPeriod(new BigFraction(3), new BigFraction(4), 250);
+		scheduler.setElapsedMillis(500);
+		loom.setBPM(480); // 500 ms per cycle
+
+		assertThat(loom.getNow(), is(equalTo(new BigFraction(1, 2))));
+		assertThat(loom.getPeriod(), is(equalTo(500L)));
+		assertThat(loom.toMillis(new BigFraction(2)), is(equalTo(1250.0)));
+		assertThat(loom.toMillis(new BigFraction(3)), is(equalTo(2250.0)));
+
+		// the ramp goes from 1 to 4 cycles per second, averaging 2.5
+		assertThat(loom.toMillis(new BigFraction(4)), is(closeTo(2650.0, 1e-6)));
+		assertThat(loom.toMillis(new BigFraction(5)), is(closeTo(2900.0, 1e-6)));
+	}
+
+	private List<Long> recordOnsets(boolean fastForward) {
+		final NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		scheduler.setFastForward(fastForward);
+		Loom loom = new Loom(null, scheduler);
+		loom.getTempoMap().rampPeriod(BigFraction.ONE, new BigFraction(3), 300)
+				.setPeriodAt(new BigFraction(5), 700);
+
+		final List<Long> onsets = new ArrayList<Long>();
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("0101");
+		pattern.loop();
+		pattern.onOnset(new Callable<Void>() {
+			@Override
+			public Void call() {
+				onsets.add(scheduler.getElapsedMillis());
+				return null;
+			}
+		});
+
+		loom.play();
+		scheduler.setElapsedMillis(6000);
+		return onsets;
+	}
+
+	@Test
+	public void fastForwardFollowsTempoMap() {
+		List<Long> slow = recordOnsets(false);
+		// four onsets per cycle over the first ten cycles
+		assertThat(slow.size(), is(equalTo(40)));
+		assertThat(recordOnsets(true), is(equalTo(slow)));
+	}
+
+	@Test
+	public void rampMustMoveForward() {
+		thrown.expect(IllegalArgumentException.class);
+		new TempoMap(1000).rampPeriod(BigFraction.ONE, BigFraction.ONE, 500);
+	}
+}
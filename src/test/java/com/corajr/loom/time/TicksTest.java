@@ -0,0 +1,97 @@
+package com.corajr.loom.time;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Ticks;
+
+public class TicksTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void commonSubdivisionsAreExact() {
+		int[] denominators = new int[] { 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12,
+				13, 16, 1000, 2000 };
+		for (int d : denominators) {
+			BigFraction f = new BigFraction(1, d);
+			assertTrue(Ticks.isExact(f));
+			assertThat(Ticks.toFraction(Ticks.fromFraction(f)),
+					is(equalTo(f)));
+		}
+	}
+
+	@Test
+	public void unusualSubdivisionsAreNotExact() {
+		BigFraction f = new BigFraction(1, 17);
+		assertFalse(Ticks.isExact(f));
+
+		thrown.expect(ArithmeticException.class);
+		Ticks.fromFraction(f);
+	}
+
+	@Test
+	public void compareMatchesBigFraction() {
+		BigFraction a = new BigFraction(1, 3);
+		BigFraction b = new BigFraction(333, 1000);
+		BigFraction huge = new BigFraction(Long.MAX_VALUE, 3L);
+		assertThat(Ticks.compare(a, b), is(equalTo(a.compareTo(b))));
+		assertThat(Ticks.compare(b, a), is(equalTo(b.compareTo(a))));
+		assertThat(Ticks.compare(a, a), is(equalTo(0)));
+		assertThat(Ticks.compare(huge, a), is(greaterThan(0)));
+	}
+
+	@Test
+	public void tickIntervalsEqualFractionIntervals() {
+		Interval fromFractions = new Interval(new BigFraction(1, 4),
+				new BigFraction(1, 2));
+		Interval fromTicks = Interval.fromTicks(Ticks.PER_CYCLE / 4,
+				Ticks.PER_CYCLE / 2);
+		assertThat(fromTicks, is(equalTo(fromFractions)));
+		assertThat(fromTicks.hashCode(), is(equalTo(fromFractions.hashCode())));
+		assertThat(fromTicks.getStart(), is(equalTo(new BigFraction(1, 4))));
+	}
+
+	@Test
+	public void largeTickIntervalsEqualFractionIntervals() {
+		long start = (1L << 33) + 1;
+		long end = (1L << 33) + 2;
+		Interval fromTicks = Interval.fromTicks(start, end);
+		Interval fromFractions = new Interval(Ticks.toFraction(start),
+				Ticks.toFraction(end));
+		assertTrue(fromFractions.isTickExact());
+		assertThat(fromTicks, is(equalTo(fromFractions)));
+		assertThat(fromTicks.hashCode(), is(equalTo(fromFractions.hashCode())));
+	}
+
+	@Test
+	public void exactnessMatchesLongRange() {
+		assertTrue(Ticks.isExact(Ticks.toFraction(Long.MAX_VALUE)));
+		assertTrue(Ticks.isExact(Ticks.toFraction(Long.MIN_VALUE)));
+		assertThat(Ticks.fromFraction(Ticks.toFraction(Long.MAX_VALUE)),
+				is(equalTo(Long.MAX_VALUE)));
+		assertFalse(Ticks.isExact(Ticks.toFraction(Long.MAX_VALUE).add(
+				Ticks.toFraction(1))));
+	}
+
+	@Test
+	public void arithmeticFallsBackForInexactValues() {
+		Interval interval = new Interval(0, 1);
+		Interval result = interval.multiply(new BigFraction(1, 17));
+		assertFalse(result.isTickExact());
+		assertThat(result, is(equalTo(new Interval(BigFraction.ZERO,
+				new BigFraction(1, 17)))));
+
+		result = result.multiply(new BigFraction(17));
+		assertTrue(result.isTickExact());
+		assertThat(result, is(equalTo(interval)));
+	}
+}
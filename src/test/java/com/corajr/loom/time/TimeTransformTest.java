@@ -0,0 +1,58 @@
+package com.corajr.loom.time;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Random;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Test;
+
+public class TimeTransformTest {
+	private static final Interval LOOP = new Interval(0, 1);
+
+	@Test
+	public void affineStagesAreFolded() {
+		TimeTransform transform = TimeTransform.IDENTITY
+				.then(new BigFraction(2), new BigFraction(1, 3), LOOP, false)
+				.then(new BigFraction(3, 4), BigFraction.ZERO, LOOP, false)
+				.then(BigFraction.ONE, new BigFraction(-1, 5), LOOP, true);
+		assertThat(transform.getStageCount(), is(equalTo(1)));
+
+		transform = transform.then(new BigFraction(-1), BigFraction.ZERO,
+				LOOP, false).then(new BigFraction(5), BigFraction.ONE, LOOP,
+				false);
+		assertThat(transform.getStageCount(), is(equalTo(3)));
+	}
+
+	@Test
+	public void matchesStepByStep() {
+		BigFraction[][] stages = {
+				{ new BigFraction(2), new BigFraction(1, 3) },
+				{ new BigFraction(3, 4), BigFraction.ZERO },
+				{ new BigFraction(-1), new BigFraction(1, 7) },
+				{ new BigFraction(5, 3), new BigFraction(-2, 9) },
+				{ new BigFraction(1, 2), new BigFraction(1, 4) } };
+		boolean[] wraps = { false, true, false, false, true };
+
+		TimeTransform transform = TimeTransform.IDENTITY;
+		for (int i = 0; i < stages.length; i++) {
+			transform = transform.then(stages[i][0], stages[i][1], LOOP,
+					wraps[i]);
+		}
+
+		Random random = new Random(21);
+		for (int i = 0; i < 200; i++) {
+			BigFraction start = new BigFraction(random.nextInt(10000), 997);
+			Interval interval = new Interval(start, start.add(new BigFraction(
+					1 + random.nextInt(10), 1000)));
+
+			Interval expected = interval;
+			for (int j = 0; j < stages.length; j++) {
+				expected = TimeTransform.apply(expected, stages[j][0],
+						stages[j][1], LOOP, wraps[j]);
+			}
+			assertThat(transform.apply(interval), is(equalTo(expected)));
+		}
+	}
+}
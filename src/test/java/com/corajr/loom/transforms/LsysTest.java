@@ -6,11 +6,13 @@ import static org.hamcrest.Matchers.*;
 
 import java.util.*;
 
+import org.apache.commons.math3.fraction.BigFraction;
 import org.junit.Test;
 
 import com.corajr.loom.*;
 import com.corajr.loom.mappings.TurtleDraw;
 import com.corajr.loom.mappings.TurtleDrawCommand;
+import com.corajr.loom.time.Interval;
 import com.corajr.loom.transforms.LsysRewriter;
 
 public class LsysTest {
@@ -106,4 +108,82 @@ public class LsysTest {
 		TurtleDrawCommand[] commands = lsys.getTurtleDrawCommands();
 		assertThat(commands.length, is(equalTo(5)));
 	}
+
+	@Test
+	public void lazyMatchesEager() {
+		LsysRewriter rewriter = new LsysRewriter("X->X+YF", "Y->FX-Y");
+		EventCollection axiom = rewriter.makeAxiom("FX");
+
+		for (int gen = 0; gen < 7; gen++) {
+			rewriter.generations = gen;
+			EventCollection eager = rewriter.apply(axiom);
+			LazyLsysEvents lazy = rewriter.lazy(axiom);
+
+			assertThat(lazy.size(), is(equalTo((long) eager.size())));
+
+			for (int i = 0; i < 40; i++) {
+				Interval query = new Interval(new BigFraction(i, 37),
+						new BigFraction(i + 3, 37));
+				assertThat(lazy.getForInterval(query),
+						is(equalTo(eager.getForInterval(query))));
+
+				BigFraction time = new BigFraction(i, 41);
+				assertThat(lazy.getNextBoundary(time),
+						is(equalTo(eager.getNextBoundary(time))));
+			}
+		}
+	}
+
+	@Test
+	public void lazyKeepsParents() {
+		LsysRewriter rewriter = new LsysRewriter(2, "A->AB", "B->A");
+		EventCollection axiom = EventCollection.fromString("0");
+		LEvent eager = rewriter.apply(axiom).firstEntry().getValue();
+		LEvent lazy = rewriter.lazy(axiom)
+				.getForInterval(new Interval(0, 0.1)).iterator().next();
+
+		assertThat(lazy, is(equalTo(eager)));
+		assertThat(lazy.getParentEvent(), is(equalTo(eager.getParentEvent())));
+		assertThat(lazy.getParentEvent().getParentEvent(), is(equalTo(eager
+				.getParentEvent().getParentEvent())));
+	}
+
+	@Test
+	public void deepGenerations() {
+		LsysRewriter rewriter = new LsysRewriter(30, "A->AB", "B->A");
+		LazyLsysEvents lazy = rewriter.lazy(EventCollection.fromString("0"));
+
+		// the 31st Fibonacci number
+		assertThat(lazy.size(), is(equalTo(2178309L)));
+		assertThat(lazy.getForInterval(new Interval(new BigFraction(1, 2),
+				new BigFraction(1000001, 2000000))).size(),
+				is(greaterThan(0)));
+	}
+
+	@Test
+	public void indexedRulesKeepOrder() {
+		Rule evenIndices = new Rule() {
+			@Override
+			public boolean canApply(int index, LEvent event) {
+				return index % 2 == 0;
+			}
+
+			@Override
+			public Collection<LEvent> apply(int index, LEvent event) {
+				return Collections.emptyList();
+			}
+		};
+
+		ArrayList<Rule> rules = new ArrayList<Rule>();
+		rules.add(LsysRewriter.ruleFrom("AB", "A->B"));
+		rules.add(evenIndices);
+		rules.add(LsysRewriter.ruleFrom("AB", "B->A"));
+		LsysRewriter rewriter = new LsysRewriter("AB", 1, rules);
+
+		// A always becomes B; B is dropped at even indices
+		EventCollection events = rewriter.apply(rewriter.makeAxiom("ABBA"));
+		assertThat(rewriter.fromEvents(events.values()), is(equalTo("BAB")));
+		assertThat(rules.get(0).getMatchValue(), is(equalTo(0.0)));
+		assertThat(evenIndices.getMatchValue(), is(nullValue()));
+	}
 }
@@ -0,0 +1,121 @@
+package com.corajr.loom.transforms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.corajr.loom.EventCollection;
+import com.corajr.loom.LEvent;
+
+public class ParallelRewriteTest {
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	private static List<LEvent> valuesOf(EventCollection events) {
+		return new ArrayList<LEvent>(events.values());
+	}
+
+	@Test
+	public void lsysMatchesSerial() {
+		LsysRewriter rewriter = new LsysRewriter(17, "A->AB", "B->A");
+		EventCollection axiom = EventCollection.fromString("0");
+		EventCollection serial = rewriter.apply(axiom);
+
+		// the last generation rewrites enough events to be split
+		EventCollection lastInput = new LsysRewriter(16, "A->AB", "B->A")
+				.apply(axiom);
+		assertThat(lastInput.size(), is(equalTo(2584)));
+		assertThat(lastInput.size(),
+				is(greaterThanOrEqualTo(EventRewriter.MIN_PARALLEL_EVENTS)));
+
+		rewriter.setPool(pool);
+		EventCollection parallel = rewriter.apply(axiom);
+
+		assertThat(parallel.size(), is(equalTo(4181)));
+		assertThat(valuesOf(parallel), is(equalTo(valuesOf(serial))));
+	}
+
+	@Test
+	public void subdivideMatchesSerial() {
+		LEvent[] bars = new LEvent[5000];
+		Arrays.fill(bars, LEvent.evt(1, 1.0));
+		EventCollection events = EventCollection.fromEvents(LEvent.seq(bars));
+		SubdivideRewriter rewriter = new SubdivideRewriter(new BigFraction(1,
+				2), 2);
+		EventCollection serial = rewriter.apply(events);
+
+		rewriter.setPool(pool);
+		EventCollection parallel = rewriter.apply(events);
+
+		assertThat(parallel.size(), is(equalTo(20000)));
+		assertThat(valuesOf(parallel), is(equalTo(valuesOf(serial))));
+	}
+
+	@Test
+	public void indicesArePreserved() {
+		final List<Integer> seen = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		EventRewriter rewriter = new EventRewriter(new Rule() {
+			@Override
+			public boolean canApply(int index, LEvent event) {
+				return true;
+			}
+
+			@Override
+			public Collection<LEvent> apply(int index, LEvent event) {
+				seen.add(index);
+				return Collections.singletonList(event);
+			}
+		}) {
+		};
+		rewriter.setPool(pool);
+
+		int n = 4096;
+		rewriter.apply(EventCollection.fromString(new String(new char[n])
+				.replace('\0', '1')));
+
+		Collections.sort(seen);
+		for (int i = 0; i < n; i++) {
+			assertThat(seen.get(i), is(equalTo(i)));
+		}
+	}
+
+	@Ignore
+	@Test
+	public void scalingBenchmark() {
+		LsysRewriter rewriter = new LsysRewriter(24, "A->AB", "B->A");
+		EventCollection axiom = EventCollection.fromString("0");
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+			ForkJoinPool benchPool = new ForkJoinPool(parallelism);
+			rewriter.setPool(benchPool);
+
+			long start = System.nanoTime();
+			EventCollection result = rewriter.apply(axiom);
+			long elapsed = System.nanoTime() - start;
+
+			benchPool.shutdown();
+
+			System.out.format("parallelism %2d: %8.1f ms for %d events%n",
+					parallelism, elapsed / 1e6, result.size());
+		}
+	}
+}
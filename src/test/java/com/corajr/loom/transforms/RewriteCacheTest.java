@@ -0,0 +1,158 @@
+package com.corajr.loom.transforms;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.*;
+import com.corajr.loom.time.Interval;
+
+public class RewriteCacheTest {
+	private RewriteCache cache;
+	private LsysRewriter lsys;
+	private EventCollection axiom;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new RewriteCache();
+		lsys = new LsysRewriter(3, "A->AB", "B->A");
+		axiom = lsys.makeAxiom("A");
+	}
+
+	@Test
+	public void repeatedRewriteIsCached() {
+		EventCollection first = cache.apply(lsys, axiom);
+		EventCollection second = cache.apply(lsys, axiom);
+
+		assertThat(second, is(not(sameInstance(first))));
+		assertThat(lsys.fromEvents(first.values()), is(equalTo("ABAAB")));
+		assertThat(lsys.fromEvents(second.values()), is(equalTo("ABAAB")));
+		assertThat(cache.getHits(), is(equalTo(1L)));
+		assertThat(cache.getMisses(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void changedInputIsRewrittenAgain() {
+		EventCollection first = cache.apply(lsys, axiom);
+		axiom.add(new LEvent(new Interval(1, 2), 0.0));
+		EventCollection second = cache.apply(lsys, axiom);
+
+		assertThat(second, is(not(sameInstance(first))));
+		assertThat(lsys.fromEvents(second.values()), is(equalTo("ABAABABAAB")));
+	}
+
+	@Test
+	public void writeDuringRewriteIsRewrittenAgain() {
+		final EventCollection source = axiom;
+		LsysRewriter writing = new LsysRewriter(3, "A->AB", "B->A") {
+			private boolean written = false;
+
+			@Override
+			public EventCollection apply(EventCollection original) {
+				if (!written) {
+					written = true;
+					source.add(new LEvent(new Interval(1, 2), 0.0));
+				}
+				return super.apply(original);
+			}
+		};
+
+		cache.apply(writing, axiom);
+		EventCollection second = cache.apply(writing, axiom);
+
+		assertThat(lsys.fromEvents(second.values()), is(equalTo("ABAABABAAB")));
+		assertThat(cache.getMisses(), is(equalTo(2L)));
+	}
+
+	@Test
+	public void concurrentWriteIsRewrittenAgain() throws Exception {
+		for (int i = 0; i < 200; i++) {
+			final EventCollection source = lsys.makeAxiom("A");
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread writer = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					source.add(new LEvent(new Interval(1, 2), 0.0));
+				}
+			});
+			writer.start();
+			start.countDown();
+			cache.apply(lsys, source);
+			writer.join();
+
+			EventCollection result = cache.apply(lsys, source);
+			assertThat(lsys.fromEvents(result.values()),
+					is(equalTo("ABAABABAAB")));
+		}
+	}
+
+	@Test
+	public void changedRewriterIsRewrittenAgain() {
+		EventCollection first = cache.apply(lsys, axiom);
+		lsys.generations = 4;
+		EventCollection second = cache.apply(lsys, axiom);
+
+		assertThat(second, is(not(sameInstance(first))));
+		assertThat(second.size(), is(equalTo(8)));
+	}
+
+	@Test
+	public void changedResultDoesNotAffectCache() {
+		EventCollection first = cache.apply(lsys, axiom);
+		first.clear();
+		EventCollection second = cache.apply(lsys, axiom);
+
+		assertThat(second, is(not(sameInstance(first))));
+		assertThat(second.size(), is(equalTo(5)));
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		cache = new RewriteCache(10);
+		EventCollection a = lsys.makeAxiom("A");
+		EventCollection b = lsys.makeAxiom("B");
+		EventCollection c = lsys.makeAxiom("AA");
+
+		cache.apply(lsys, a); // 5 events
+		cache.apply(lsys, b); // 3 events
+		cache.apply(lsys, a);
+		cache.apply(lsys, c); // 10 events
+		assertThat(cache.size(), is(equalTo(1)));
+		assertThat(cache.getHeldEvents(), is(equalTo(10L)));
+
+		cache.apply(lsys, c);
+		assertThat(cache.getHits(), is(equalTo(2L)));
+	}
+
+	@Test
+	public void patternRewriteUsesCache() {
+		lsys.setCache(cache);
+		new Pattern(null, axiom).rewrite(lsys);
+		new Pattern(null, axiom).rewrite(lsys);
+
+		assertThat(cache.getMisses(), is(equalTo(1L)));
+		assertThat(cache.getHits(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void patternsDoNotShareCachedResult() {
+		lsys.setCache(cache);
+		Pattern q1 = new Pattern(null, axiom).rewrite(lsys);
+		Pattern q2 = new Pattern(null, axiom).rewrite(lsys);
+		assertThat(cache.getHits(), is(equalTo(1L)));
+
+		q1.repeat(3);
+
+		assertThat(q1.getTotalInterval(), is(equalTo(new Interval(0, 3))));
+		assertThat(q2.getTotalInterval(), is(equalTo(new Interval(0, 1))));
+	}
+}
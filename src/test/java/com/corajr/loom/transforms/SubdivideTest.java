@@ -5,8 +5,11 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 import com.corajr.loom.*;
@@ -16,6 +19,18 @@ import com.corajr.loom.transforms.Rule;
 import com.corajr.loom.transforms.SubdivideRewriter;
 
 public class SubdivideTest {
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
 	@Test
 	public void subdivideEvent() {
 		LEvent event = new LEvent(new Interval(0, 1), 1.0);
@@ -55,4 +70,39 @@ public class SubdivideTest {
 				quarterTriggers.values()));
 
 	}
+
+	@Test
+	public void streamMatchesParallel() {
+		List<LEvent> bars = new ArrayList<LEvent>();
+		for (int i = 0; i < EventRewriter.MIN_PARALLEL_EVENTS; i++) {
+			bars.add(new LEvent(new Interval(i, i + 1), 1.0));
+		}
+		EventCollection events = EventCollection.fromEvents(bars);
+
+		EventRewriter streamed = new SubdivideRewriter(new BigFraction(125,
+				1000), 2);
+		EventRewriter parallel = new SubdivideRewriter(new BigFraction(125,
+				1000), 2);
+		parallel.setPool(pool);
+
+		assertThat(new ArrayList<LEvent>(streamed.apply(events).values()),
+				is(equalTo(new ArrayList<LEvent>(parallel.apply(events)
+						.values()))));
+	}
+
+	@Test
+	public void viewMatchesApply() {
+		EventCollection events = EventCollection.fromString("1111");
+		EventRewriter rewriter = new SubdivideRewriter(new BigFraction(125,
+				1000), 2);
+		EventCollection expected = rewriter.apply(events);
+		EventQueryable view = rewriter.view(events);
+
+		Interval query = new Interval(new BigFraction(1, 3), new BigFraction(
+				2, 3));
+		assertThat(view.getForInterval(query), containsInAnyOrder(expected
+				.getForInterval(query).toArray(new LEvent[0])));
+		assertThat(view.getForInterval(new Interval(0, 1)).size(),
+				is(equalTo(expected.size())));
+	}
 }
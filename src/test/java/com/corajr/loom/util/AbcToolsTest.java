@@ -12,6 +12,7 @@ import org.junit.rules.ExpectedException;
 
 import com.corajr.loom.*;
 import com.corajr.loom.mappings.IntMapping;
+import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.NonRealTimeScheduler;
 import com.corajr.loom.util.AbcTools;
 
@@ -99,4 +100,18 @@ public class AbcToolsTest {
 				.eventsFromString("C|^FG2C|(3^FGA(3^FGA|^FG2||");
 		assertThat(events.size(), is(equalTo(12)));
 	}
+
+	@Test
+	public void chords() {
+		PolyphonicEventCollection events = AbcTools
+				.polyphonicEventsFromString("[CEG]2c");
+		assertThat(events.size(), is(equalTo(4)));
+		assertThat(events.getForInterval(new Interval(0, 0.01)).size(),
+				is(equalTo(3)));
+
+		EventCollection melody = AbcTools.eventsFromString("[CEG]2c");
+		assertThat(melody.size(), is(equalTo(2)));
+		assertThat(new IntMapping(0, 127).call(melody.values().iterator()
+				.next().getValue()), is(equalTo(67)));
+	}
 }